@@ -3,9 +3,16 @@ package io.github.jansky.ezroute;
 import androidx.annotation.Nullable;
 
 /**
- * <b>Bus</b> represent the various buses in Singapore
+ * <b>Bus</b> represent the various buses in Singapore. A walking transfer between
+ * two nearby bus stops is represented by the walking Bus.
  */
 public class Bus {
+    /**
+     * The service number the server gives to walking transfers
+     */
+    static final String WALKING_SERVICE_NO = "Walk";
+    private static final int WALKING_BUS_NUMBER = 0;
+
     private int busNumber;
 
     /**
@@ -16,6 +23,40 @@ public class Bus {
         this.busNumber = busNumber;
     }
 
+    /**
+     * walking() creates the Bus of a walking transfer
+     * @return the walking Bus
+     */
+    static Bus walking() {
+        return new Bus(WALKING_BUS_NUMBER);
+    }
+
+    /**
+     * fromServiceNo() creates the Bus of a service number as given by the server
+     * @param serviceNo the service number, or WALKING_SERVICE_NO for a walking transfer
+     * @return the Bus
+     * @throws NumberFormatException if the service number is not a number
+     */
+    static Bus fromServiceNo(String serviceNo) {
+        return serviceNo.equals(WALKING_SERVICE_NO) ? walking() : new Bus(Integer.parseInt(serviceNo));
+    }
+
+    /**
+     * isWalking() checks if the bus is a walking transfer rather than a bus
+     * @return true if the bus is a walking transfer, false otherwise
+     */
+    boolean isWalking() {
+        return busNumber == WALKING_BUS_NUMBER;
+    }
+
+    /**
+     * getServiceNo() gets the service number of the bus as given by the server
+     * @return the service number, or WALKING_SERVICE_NO for a walking transfer
+     */
+    String getServiceNo() {
+        return isWalking() ? WALKING_SERVICE_NO : String.valueOf(busNumber);
+    }
+
     /**
      * getBusNumber() gets the service number of the bus
      * @return service number of the bus
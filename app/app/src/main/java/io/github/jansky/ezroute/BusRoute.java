@@ -5,13 +5,17 @@ import androidx.annotation.Nullable;
 /**
  * <b>BusRoute</b> contains a Bus and the origin and destination
  * BusStop, including the number of stops between the origin and destination,
- * inclusive of both stops.
+ * inclusive of both stops. A BusRoute may also have the path of the bus on
+ * the map, as an encoded polyline through the locations of its stops.
+ * A walking BusRoute is a walk between two nearby bus stops to transfer
+ * between buses, and has the walking Bus.
  */
 class BusRoute {
     private Bus bus;
     private BusStop orgBusStop;
     private BusStop dstBusStop;
     private int numStops;
+    private String encodedPath;
 
     /**
      * Constructor for BusRoutes
@@ -21,10 +25,25 @@ class BusRoute {
      * @param numStops the number of stops on the route
      */
     public BusRoute(Bus bus, BusStop orgBusStop, BusStop dstBusStop, int numStops) {
+        this(bus, orgBusStop, dstBusStop, numStops, null);
+    }
+
+    /**
+     * Constructor for BusRoutes with a path on the map
+     * @param bus a Bus
+     * @param orgBusStop the starting/origin BusStop
+     * @param dstBusStop the ending/destination BusStop
+     * @param numStops the number of stops on the route
+     * @param encodedPath the locations of the stops on the route as an encoded
+     *                    polyline, or null if they are not known
+     */
+    public BusRoute(Bus bus, BusStop orgBusStop, BusStop dstBusStop, int numStops,
+                    @Nullable String encodedPath) {
         this.bus = bus;
         this.orgBusStop = orgBusStop;
         this.dstBusStop = dstBusStop;
         this.numStops = numStops;
+        this.encodedPath = encodedPath;
     }
 
     /**
@@ -43,6 +62,14 @@ class BusRoute {
         return bus;
     }
 
+    /**
+     * isWalking() checks if the BusRoute is walked rather than taken on a bus
+     * @return true if the BusRoute is a walking transfer, false otherwise
+     */
+    public boolean isWalking() {
+        return bus.isWalking();
+    }
+
     /**
      * getOrgBusStop() gets the origin BusStop of the BusRoute
      * @return
@@ -59,6 +86,16 @@ class BusRoute {
         return dstBusStop;
     }
 
+    /**
+     * getEncodedPath() gets the path of the BusRoute on the map
+     * @return the locations of the stops on the route as an encoded polyline,
+     * or null if they are not known
+     */
+    @Nullable
+    public String getEncodedPath() {
+        return encodedPath;
+    }
+
     /**
      * BusRoute equality checks to see if the Bus, origin BusStop,
      * destination BusStop, and number of stops is the same. Generally, a bus route
@@ -9,14 +9,22 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * <b>BusRoutesAdapter</b> takes BusRouteActivities and will generate the
- * list display structure for the BusRouteListActivity.
+ * list display structure for the BusRouteListActivity. When there is more
+ * than one RouteAlternative, the BusRoutes of each are shown as a separate
+ * group under a header with its rank and travel time.
  */
-public class BusRoutesAdapter extends RecyclerView.Adapter<BusRoutesAdapter.ViewHolder> {
-    private List<BusRoute> busRoutes;
+public class BusRoutesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    private static final int TYPE_HEADER = 0;
+    private static final int TYPE_BUS_ROUTE = 1;
+
+    private List<RouteAlternative> alternatives;
+    /** the rows of the list: the index of a RouteAlternative for a header, or a BusRoute */
+    private List<Object> items = new ArrayList<>();
     private LayoutInflater layoutInflater;
 
     /**
@@ -35,15 +43,41 @@ public class BusRoutesAdapter extends RecyclerView.Adapter<BusRoutesAdapter.View
     }
 
     /**
-     * BusRoutesAdapter takes in BusRoutes and generates the visual
+     * The inner HeaderViewHolder encapsulates the structure of the
+     * activity_bus_route_header layout, which titles each RouteAlternative
+     */
+    public class HeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView title;
+        public HeaderViewHolder(@NonNull View itemView) {
+            super(itemView);
+            title = itemView.findViewById(R.id.alternative_title);
+        }
+    }
+
+    /**
+     * BusRoutesAdapter takes in RouteAlternatives and generates the visual
      * activity_bus_route seen on the screen
      * @param context context of the application
-     * @param busRoutes a list of BusRoutes sorted in order of which
-     *                  bus needs to be boarded first
+     * @param alternatives the RouteAlternatives, best first
      */
-    BusRoutesAdapter(Context context, List<BusRoute> busRoutes) {
+    BusRoutesAdapter(Context context, List<RouteAlternative> alternatives) {
         this.layoutInflater = LayoutInflater.from(context);
-        this.busRoutes = busRoutes;
+        this.alternatives = alternatives;
+        for (int i = 0; i < alternatives.size(); i++) {
+            if (alternatives.size() > 1)
+                items.add(i);
+            items.addAll(alternatives.get(i).getBusRoutes());
+        }
+    }
+
+    /**
+     * getItemViewType() tells the RecyclerView whether a row is a header or a BusRoute
+     * @param position an index position of the list
+     * @return TYPE_HEADER or TYPE_BUS_ROUTE
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return items.get(position) instanceof Integer ? TYPE_HEADER : TYPE_BUS_ROUTE;
     }
 
     /**
@@ -51,11 +85,17 @@ public class BusRoutesAdapter extends RecyclerView.Adapter<BusRoutesAdapter.View
      * internally by the RecyclerView.Adapter class.
      * @param parent a ViewGroup
      * @param viewType a view type
-     * @return a ViewHolder
+     * @return a ViewHolder, or a HeaderViewHolder for a header
      */
     @NonNull
     @Override
-    public BusRoutesAdapter.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType == TYPE_HEADER) {
+            View headerView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.activity_bus_route_header, parent, false);
+            return new BusRoutesAdapter.HeaderViewHolder(headerView);
+        }
+
         View itemView = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.activity_bus_route, parent, false);
 
@@ -65,13 +105,27 @@ public class BusRoutesAdapter extends RecyclerView.Adapter<BusRoutesAdapter.View
     /**
      * onBindViewHolder() is a method used internally by RecyclerView.Adapter. It sets the text
      * for each of the individual view rows.
-     * @param holder a ViewHolder
+     * @param viewHolder a ViewHolder or HeaderViewHolder
      * @param position an index position of the list
      */
     @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        BusRoute busRoute = busRoutes.get(position);
-        holder.busNumber.setText(String.valueOf(busRoute.getBus().getBusNumber()));
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder viewHolder, int position) {
+        Object item = items.get(position);
+        if (item instanceof Integer) {
+            int rank = (Integer) item;
+            int travelTime = alternatives.get(rank).getTravelTime();
+            Context context = viewHolder.itemView.getContext();
+            ((HeaderViewHolder) viewHolder).title.setText(travelTime == RouteAlternative.UNKNOWN_TRAVEL_TIME ?
+                    context.getString(R.string.route_alternative, rank + 1) :
+                    context.getString(R.string.route_alternative_travel_time, rank + 1, travelTime));
+            return;
+        }
+
+        ViewHolder holder = (ViewHolder) viewHolder;
+        BusRoute busRoute = (BusRoute) item;
+        holder.busNumber.setText(busRoute.isWalking() ?
+                holder.itemView.getContext().getString(R.string.walk) :
+                String.valueOf(busRoute.getBus().getBusNumber()));
         holder.orgBusStop.setText(busRoute.getOrgBusStop().getName());
         holder.dstBusStop.setText(busRoute.getDstBusStop().getName());
     }
@@ -79,11 +133,12 @@ public class BusRoutesAdapter extends RecyclerView.Adapter<BusRoutesAdapter.View
     /**
      * getItemCount() is used internally by RecyclerView.Adapter and it should
      * return the amount of items, which in this case is the amount of BusRoutes
+     * and headers
      * @return number of items
      */
     @Override
     public int getItemCount() {
-        return busRoutes.size();
+        return items.size();
     }
 
 
@@ -10,34 +10,29 @@ import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.RetryPolicy;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.OnMapReadyCallback;
+import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * BusRoutesListActivity is the activity that contains and generates
- * all the BusRoutes viewed on screen.
+ * all the BusRoutes viewed on screen, and draws them on a map.
  */
-public class BusRoutesListActivity extends AppCompatActivity {
+public class BusRoutesListActivity extends AppCompatActivity implements OnMapReadyCallback {
     private static final String TAG = "BusRoutesList";
 
     private LatLng destination;
     private LatLng origin;
+    private String destinationName;
     private RecyclerView recyclerView;
     private BusRoutesAdapter busRoutesAdapter;
+    private GoogleMap routeMap;
+    private List<RouteAlternative> alternatives;
+    private boolean fromHistory;
 
     /**
      * onCreate() overrides the default method on what occurs when this
@@ -55,92 +50,143 @@ public class BusRoutesListActivity extends AppCompatActivity {
         Bundle bundle = intent.getParcelableExtra(MapsActivity.BUNDLE);
         destination = bundle.getParcelable(MapsActivity.DESTINATION_KEY);
         origin = bundle.getParcelable(MapsActivity.ORIGIN_KEY);
+        destinationName = bundle.getString(MapsActivity.DESTINATION_NAME_KEY);
         Log.i(TAG, "destination: " + destination.toString());
         Log.i(TAG, "origin: " + origin.toString());
 
-        String orgLat = String.valueOf(origin.latitude);
-        String orgLng = String.valueOf(origin.longitude);
-        String dstLat = String.valueOf(destination.latitude);
-        String dstLng = String.valueOf(destination.longitude);
-        calculateRoute(orgLat, orgLng, dstLat, dstLng);
+        SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
+                .findFragmentById(R.id.route_map);
+        mapFragment.getMapAsync(this);
+
+        loadFromHistory(origin, destination);
+        calculateRoute(origin, destination);
     }
 
     /**
-     * calculateRoute() will perform a request to the backend server to
-     * get the routes from the origin location to the destination location.
-     * It will also a worker thread in the RequestQueue to update the view once
-     * the calculations are complete.
-     * @param orgLat string format of the origin location's latitude in decimal degrees
-     * @param orgLng string format of the origin location's longitude in decimal degrees
-     * @param dstLat string format of the destination location's latitude in decimal degrees
-     * @param dstLng string format of the destination location's longitude in decimal degrees
+     * onMapReady() draws the BusRoutes on the map if they have already been calculated
+     * @param googleMap the GoogleMap of the route_map fragment
      */
-    private void calculateRoute(String orgLat, String orgLng, String dstLat, String dstLng) {
-        Log.d(TAG, "starting to calculate route");
-        String url = "https://ezroute.janskyd.com/findroute?originlong=" + orgLng +
-                "&originlat=" + orgLat + "&destlong=" + dstLng + "&destlat=" + dstLat;
-
-        // TODO: deal with error on json response
-        JsonObjectRequest jsonObjectRequest = new JsonObjectRequest
-                (Request.Method.GET, url, null, new Response.Listener<JSONObject>() {
-
-                    @Override
-                    public void onResponse(JSONObject response) {
-                        Log.d(TAG, response.toString());
-                        List<BusRoute> busRoutes = new ArrayList<>();
-                        try {
-                            if (response.getString("error").equals("none")){
-                                JSONArray route = response.getJSONObject("route").getJSONArray("segments");
-                                for (int i = 0; i < route.length(); i++) {
-                                    Bus bus = new Bus(route.getJSONObject(i)
-                                            .getJSONObject("busService").getInt("ServiceNo"));
-                                    JSONArray busStops = route.getJSONObject(i).getJSONArray("busStops");
-                                    BusStop orgBusStop = new BusStop(busStops.getJSONObject(0)
-                                            .getString("Description"));
-                                    BusStop dstBusStop = new BusStop(busStops.getJSONObject(busStops.length() - 1)
-                                            .getString("Description"));
-                                    int numStops = busStops.length();
-                                    BusRoute busRoute = new BusRoute(bus, orgBusStop, dstBusStop, numStops);
-                                    busRoutes.add(busRoute);
-                                    Log.d(TAG, "done adding bus routes, size: " + busRoutes.size());
-                                    populateView(busRoutes);
-                                }
-                            } else {
-                                throw new IllegalArgumentException();
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, e.toString());
-                            errorView();
-                        }
-                    }
-                }, new Response.ErrorListener() {
+    @Override
+    public void onMapReady(GoogleMap googleMap) {
+        routeMap = googleMap;
+        renderMap();
+    }
 
+    /**
+     * loadFromHistory() shows the BusRoutes of the last trip between the same locations
+     * straight away, if there has been one, while the server calculates the route again
+     * @param origin the origin location
+     * @param destination the destination location
+     */
+    private void loadFromHistory(final LatLng origin, final LatLng destination) {
+        final Singleton singleton = Singleton.getInstance(this);
+        singleton.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<BusRoute> pastRoutes = singleton.getTripHistory().findRoutes(
+                        origin.latitude, origin.longitude, destination.latitude, destination.longitude);
+                if (pastRoutes == null)
+                    return;
+                runOnUiThread(new Runnable() {
                     @Override
-                    public void onErrorResponse(VolleyError error) {
-                        errorView();
+                    public void run() {
+                        if (alternatives != null)
+                            return;
+                        Log.d(TAG, "showing " + pastRoutes.size() + " bus routes from trip history");
+                        fromHistory = true;
+                        populateView(Collections.singletonList(new RouteAlternative(pastRoutes,
+                                RouteAlternative.UNKNOWN_TRAVEL_TIME)), false);
                     }
                 });
-        RetryPolicy retryPolicy = new DefaultRetryPolicy(10000,
-                DefaultRetryPolicy.DEFAULT_MAX_RETRIES, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
-        jsonObjectRequest.setRetryPolicy(retryPolicy);
-        Singleton.getInstance(this).addToRequestQueue(jsonObjectRequest);
+            }
+        });
+    }
+
+    /**
+     * recordTrip() saves the trip and its BusRoutes to the trip history
+     * @param busRoutes the BusRoutes calculated by the server
+     */
+    private void recordTrip(List<BusRoute> busRoutes) {
+        final Singleton singleton = Singleton.getInstance(this);
+        final Trip trip = new Trip(origin.latitude, origin.longitude, destination.latitude,
+                destination.longitude, destinationName, System.currentTimeMillis(), busRoutes);
+        singleton.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                singleton.getTripHistory().record(trip);
+            }
+        });
+    }
+
+    /**
+     * calculateRoute() will perform a request to the backend server to
+     * get the routes from the origin location to the destination location,
+     * and update the view once the calculations are complete. If the server
+     * cannot be reached, the last routes found for the same locations are shown
+     * instead, along with a message saying that they may be out of date.
+     * New routes from the server are saved to the trip history.
+     * @param origin the origin location
+     * @param destination the destination location
+     */
+    private void calculateRoute(LatLng origin, LatLng destination) {
+        Log.d(TAG, "starting to calculate route");
+        new RouteFetcher(this).fetch(origin, destination, new RouteFetcher.Callback() {
+            @Override
+            public void onRoutes(List<RouteAlternative> alternatives, boolean stale) {
+                Log.d(TAG, "done adding alternative routes, size: " + alternatives.size() + ", stale: " + stale);
+                if (stale && fromHistory) {
+                    findViewById(R.id.stale_message).setVisibility(View.VISIBLE);
+                    return;
+                }
+                fromHistory = false;
+                populateView(alternatives, stale);
+                if (!stale)
+                    recordTrip(alternatives.get(0).getBusRoutes());
+            }
+
+            @Override
+            public void onError() {
+                if (fromHistory) {
+                    findViewById(R.id.stale_message).setVisibility(View.VISIBLE);
+                    return;
+                }
+                errorView();
+            }
+        });
     }
 
     /**
      * populateView() will populate and update the view on the screen
-     * with all the bus routes that the backend server had calculated.
+     * with all the alternative routes that the backend server had calculated.
      * It will also remove the progress bar when the routes are done calculating
-     * @param busRoutes the list of BusRoutes calculated by the server
+     * @param alternatives the RouteAlternatives calculated by the server, best first
+     * @param stale true if the routes are from an earlier search because the
+     *              server could not be reached
      */
-    private void populateView(List<BusRoute> busRoutes) {
+    private void populateView(List<RouteAlternative> alternatives, boolean stale) {
+        this.alternatives = alternatives;
+        renderMap();
         findViewById(R.id.progress_bar).setVisibility(View.GONE);
-        busRoutesAdapter = new BusRoutesAdapter(this, busRoutes);
+        findViewById(R.id.stale_message).setVisibility(stale ? View.VISIBLE : View.GONE);
+        busRoutesAdapter = new BusRoutesAdapter(this, alternatives);
         recyclerView = findViewById(R.id.bus_routes_list);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setItemAnimator(new DefaultItemAnimator());
         recyclerView.setAdapter(busRoutesAdapter);
     }
 
+    /**
+     * renderMap() draws the BusRoutes of the best alternative on the map once both
+     * the map and the routes are ready, replacing the routes drawn before, e.g. those
+     * from the trip history
+     */
+    private void renderMap() {
+        if (routeMap == null || alternatives == null)
+            return;
+        routeMap.clear();
+        new RouteMapRenderer(routeMap).render(alternatives.get(0).getBusRoutes());
+    }
+
     /**
      * errorView() will show the sorry error message if the server fails to respond
      * or calculate a route.
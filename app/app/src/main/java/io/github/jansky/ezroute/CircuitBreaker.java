@@ -0,0 +1,70 @@
+package io.github.jansky.ezroute;
+
+/**
+ * <b>CircuitBreaker</b> stops requests from being sent to the server after
+ * a number of consecutive failures. Once the breaker has been open for the
+ * cool down period, a single trial request is let through: if it succeeds the
+ * breaker closes again, otherwise it stays open for another cool down period.
+ */
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long coolDownMillis;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean open;
+
+    /**
+     * Constructor for a CircuitBreaker
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param coolDownMillis how long the breaker stays open before a trial request is allowed
+     */
+    CircuitBreaker(int failureThreshold, long coolDownMillis) {
+        this.failureThreshold = failureThreshold;
+        this.coolDownMillis = coolDownMillis;
+    }
+
+    /**
+     * allowRequest() checks whether a request may be sent to the server. When the
+     * breaker is open and the cool down has elapsed, this lets one trial request
+     * through and restarts the cool down.
+     * @return true if the request may be sent, false otherwise
+     */
+    synchronized boolean allowRequest() {
+        if (!open)
+            return true;
+        long now = System.currentTimeMillis();
+        if (now - openedAt >= coolDownMillis) {
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * recordSuccess() closes the breaker and resets the failure count
+     */
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+    }
+
+    /**
+     * recordFailure() counts a failed request, opening the breaker once the
+     * failure threshold has been reached
+     */
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            open = true;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * isOpen() checks whether the breaker is currently rejecting requests
+     * @return true if the breaker is open, false otherwise
+     */
+    synchronized boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,244 @@
+package io.github.jansky.ezroute;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>CompactRouteCodec</b> reads and writes the compact binary route encoding
+ * that the server returns from /findroute when asked for it in the Accept header.
+ * Only the bus service number, the first and last BusStop, the number of stops
+ * and the path of each segment are encoded. Strings are stored once in a string
+ * table, and all integers are stored as unsigned LEB128 varints:
+ * <pre>
+ * version (1 byte)
+ * stringCount, then for each string: byteLength, UTF-8 bytes
+ * segmentCount, then for each segment: serviceNo, orgBusStop, dstBusStop, numStops, path
+ * </pre>
+ * where serviceNo, orgBusStop and dstBusStop are indices into the string table, and
+ * path is one more than the index of the segment's encoded polyline, or 0 if it has
+ * none. Version 1 of the encoding has no path field. Walking transfers have the
+ * serviceNo Bus.WALKING_SERVICE_NO.
+ * <p>
+ * Version 3 holds a number of RouteAlternatives, which share the string table. The
+ * segmentCount and segments are replaced by:
+ * <pre>
+ * routeCount, then for each route: travelTime, segmentCount, segments
+ * </pre>
+ * Each version has its own media type (see mediaType()), so that the server only
+ * sends a version that the app lists in the Accept header.
+ */
+final class CompactRouteCodec {
+    static final String MEDIA_TYPE = "application/vnd.ezroute.compact-route";
+    static final int VERSION = 2;
+    static final int VERSION_ALTERNATIVES = 3;
+    private static final int VERSION_WITHOUT_PATHS = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompactRouteCodec() {
+    }
+
+    /**
+     * mediaType() gets the media type of a version of the encoding
+     * @param version the version of the encoding
+     * @return the bare MEDIA_TYPE for version 1, which the first servers to support
+     * the encoding send, or MEDIA_TYPE with a v parameter for later versions
+     */
+    static String mediaType(int version) {
+        return version == VERSION_WITHOUT_PATHS ? MEDIA_TYPE : MEDIA_TYPE + ";v=" + version;
+    }
+
+    /**
+     * decode() reads a compact route into BusRoutes
+     * @param data the encoded route
+     * @return a list of BusRoutes sorted in order of which bus needs to be boarded first
+     * @throws IOException if the data is truncated or is not a compact route
+     */
+    static List<BusRoute> decode(byte[] data) throws IOException {
+        if (data.length == 0 || (data[0] != VERSION && data[0] != VERSION_WITHOUT_PATHS))
+            throw new IOException("Unsupported compact route version");
+        int[] position = {1};
+        String[] strings = readStrings(data, position);
+        return readSegments(strings, data, position, data[0] == VERSION);
+    }
+
+    /**
+     * decodeAlternatives() reads compact alternative routes. A single compact route
+     * is read as one alternative with an unknown travel time.
+     * @param data the encoded routes
+     * @return the RouteAlternatives, best first
+     * @throws IOException if the data is truncated or is not a compact route
+     */
+    static List<RouteAlternative> decodeAlternatives(byte[] data) throws IOException {
+        if (data.length == 0 || data[0] != VERSION_ALTERNATIVES) {
+            List<RouteAlternative> alternatives = new ArrayList<>();
+            alternatives.add(new RouteAlternative(decode(data), RouteAlternative.UNKNOWN_TRAVEL_TIME));
+            return alternatives;
+        }
+
+        int[] position = {1};
+        String[] strings = readStrings(data, position);
+        int routeCount = readVarint(data, position);
+        List<RouteAlternative> alternatives = new ArrayList<>(Math.min(routeCount, data.length));
+        for (int i = 0; i < routeCount; i++) {
+            int travelTime = readVarint(data, position);
+            alternatives.add(new RouteAlternative(readSegments(strings, data, position, true), travelTime));
+        }
+        return alternatives;
+    }
+
+    /**
+     * encode() writes BusRoutes as a compact route, in the same way as the server
+     * @param busRoutes the BusRoutes to encode
+     * @return the encoded route
+     */
+    static byte[] encode(List<BusRoute> busRoutes) {
+        List<List<BusRoute>> routes = new ArrayList<>();
+        routes.add(busRoutes);
+        return encode(VERSION, routes, null);
+    }
+
+    /**
+     * encodeAlternatives() writes RouteAlternatives as compact alternative routes, in
+     * the same way as the server
+     * @param alternatives the RouteAlternatives to encode, best first
+     * @return the encoded routes
+     */
+    static byte[] encodeAlternatives(List<RouteAlternative> alternatives) {
+        List<List<BusRoute>> routes = new ArrayList<>();
+        int[] travelTimes = new int[alternatives.size()];
+        for (int i = 0; i < alternatives.size(); i++) {
+            routes.add(alternatives.get(i).getBusRoutes());
+            travelTimes[i] = Math.max(alternatives.get(i).getTravelTime(), 0);
+        }
+        return encode(VERSION_ALTERNATIVES, routes, travelTimes);
+    }
+
+    private static byte[] encode(int version, List<List<BusRoute>> routes, int[] travelTimes) {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> indices = new HashMap<>();
+        List<int[][]> encodedRoutes = new ArrayList<>(routes.size());
+        for (List<BusRoute> busRoutes : routes) {
+            int[][] segments = new int[busRoutes.size()][];
+            for (int i = 0; i < busRoutes.size(); i++) {
+                BusRoute busRoute = busRoutes.get(i);
+                segments[i] = new int[]{
+                        indexOf(busRoute.getBus().getServiceNo(), strings, indices),
+                        indexOf(busRoute.getOrgBusStop().getName(), strings, indices),
+                        indexOf(busRoute.getDstBusStop().getName(), strings, indices),
+                        busRoute.getNumStops(),
+                        busRoute.getEncodedPath() == null ? 0 :
+                                indexOf(busRoute.getEncodedPath(), strings, indices) + 1
+                };
+            }
+            encodedRoutes.add(segments);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(version);
+        writeVarint(out, strings.size());
+        for (String string : strings) {
+            byte[] utf8 = string.getBytes(UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8, 0, utf8.length);
+        }
+        if (travelTimes != null)
+            writeVarint(out, encodedRoutes.size());
+        for (int r = 0; r < encodedRoutes.size(); r++) {
+            if (travelTimes != null)
+                writeVarint(out, travelTimes[r]);
+            int[][] segments = encodedRoutes.get(r);
+            writeVarint(out, segments.length);
+            for (int[] segment : segments) {
+                for (int field : segment)
+                    writeVarint(out, field);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String[] readStrings(byte[] data, int[] position) throws IOException {
+        int stringCount = readVarint(data, position);
+        if (stringCount > data.length)
+            throw new EOFException("Compact route is truncated");
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = readVarint(data, position);
+            if (position[0] + length > data.length)
+                throw new EOFException("Compact route is truncated");
+            strings[i] = new String(data, position[0], length, UTF_8);
+            position[0] += length;
+        }
+        return strings;
+    }
+
+    private static List<BusRoute> readSegments(String[] strings, byte[] data, int[] position,
+                                               boolean hasPaths) throws IOException {
+        int segmentCount = readVarint(data, position);
+        List<BusRoute> busRoutes = new ArrayList<>(Math.min(segmentCount, data.length));
+        for (int i = 0; i < segmentCount; i++) {
+            String serviceNo = readString(strings, data, position);
+            BusStop orgBusStop = new BusStop(readString(strings, data, position));
+            BusStop dstBusStop = new BusStop(readString(strings, data, position));
+            int numStops = readVarint(data, position);
+            String encodedPath = null;
+            if (hasPaths) {
+                int path = readVarint(data, position);
+                if (path > strings.length)
+                    throw new IOException("Compact route string index out of range");
+                encodedPath = path == 0 ? null : strings[path - 1];
+            }
+            try {
+                busRoutes.add(new BusRoute(Bus.fromServiceNo(serviceNo),
+                        orgBusStop, dstBusStop, numStops, encodedPath));
+            } catch (NumberFormatException e) {
+                throw new IOException("Unsupported bus service number " + serviceNo);
+            }
+        }
+        return busRoutes;
+    }
+
+    private static int indexOf(String string, List<String> strings, Map<String, Integer> indices) {
+        Integer index = indices.get(string);
+        if (index == null) {
+            index = strings.size();
+            indices.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static String readString(String[] strings, byte[] data, int[] position) throws IOException {
+        int index = readVarint(data, position);
+        if (index >= strings.length)
+            throw new IOException("Compact route string index out of range");
+        return strings[index];
+    }
+
+    private static int readVarint(byte[] data, int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= data.length)
+                throw new EOFException("Compact route is truncated");
+            int b = data[position[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Compact route varint is too long");
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.jansky.ezroute;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * <b>EZRouteApplication</b> starts the StartupTracer as early as possible, so that cold
+ * starts can be measured from the start of the process. Each marker is written to
+ * Logcat under the STARTUP_TAG, where measure-startup.sh picks them up.
+ */
+public class EZRouteApplication extends Application {
+    static final String STARTUP_TAG = "EZRouteStartup";
+
+    private StartupTracer startupTracer;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        long now = SystemClock.elapsedRealtime();
+        // before Android N, the process start time is not available, so the
+        // application's creation is the closest thing to it
+        long processStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ?
+                Process.getStartElapsedRealtime() : now;
+        startupTracer = new StartupTracer(processStart, new StartupTracer.Listener() {
+            @Override
+            public void onMark(String marker, long millis) {
+                Log.i(STARTUP_TAG, marker + "=" + millis);
+            }
+        }, StartupTracer.FIRST_FRAME, StartupTracer.MAP_READY, StartupTracer.SEARCH_READY);
+        startupTracer.mark(StartupTracer.APPLICATION_CREATED, now);
+    }
+
+    /**
+     * getStartupTracer() gets the tracer of this process's cold start
+     * @return the StartupTracer
+     */
+    StartupTracer getStartupTracer() {
+        return startupTracer;
+    }
+
+    /**
+     * mark() records that a stage of the cold start has been reached now
+     * @param marker the name of the marker
+     */
+    void mark(String marker) {
+        startupTracer.mark(marker, SystemClock.elapsedRealtime());
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.jansky.ezroute;
+
+/**
+ * <b>HedgedRequest</b> sends a request to the server and, if no response has
+ * arrived once the observed p95 latency has elapsed, sends a duplicate (hedged)
+ * request and takes whichever response arrives first. If the first request fails
+ * before the hedge is due, the hedge is sent straight away instead.
+ * Latencies are recorded in a LatencyTracker and results in a CircuitBreaker,
+ * which are shared between requests to the same server.
+ * @param <T> the type of the response
+ */
+class HedgedRequest<T> {
+    private static final int MAX_ATTEMPTS = 2;
+
+    /**
+     * A Call is a single attempt in flight that can be cancelled
+     */
+    interface Call {
+        void cancel();
+    }
+
+    /**
+     * A CallFactory starts a new attempt, reporting its result to the listener
+     * @param <T> the type of the response
+     */
+    interface CallFactory<T> {
+        Call start(Listener<T> listener);
+    }
+
+    /**
+     * A Listener receives the result of a request
+     * @param <T> the type of the response
+     */
+    interface Listener<T> {
+        void onResponse(T response);
+
+        void onFailure(Exception error);
+    }
+
+    /**
+     * A Scheduler runs delayed tasks. An android.os.Handler can be adapted to this.
+     */
+    interface Scheduler {
+        void postDelayed(Runnable task, long delayMillis);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    private final CallFactory<T> callFactory;
+    private final Scheduler scheduler;
+    private final LatencyTracker latencyTracker;
+    private final CircuitBreaker circuitBreaker;
+
+    private final Call[] calls = new Call[MAX_ATTEMPTS];
+    private Listener<T> listener;
+    private long startNanos;
+    private int attempts;
+    private int failures;
+    private boolean done;
+
+    private final Runnable hedge = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (HedgedRequest.this) {
+                if (!done && attempts < MAX_ATTEMPTS)
+                    startAttempt();
+            }
+        }
+    };
+
+    /**
+     * Constructor for a HedgedRequest
+     * @param callFactory starts each attempt of the request
+     * @param scheduler schedules the hedged attempt
+     * @param latencyTracker the latencies of previous requests to the same server
+     * @param circuitBreaker the circuit breaker of the server
+     */
+    HedgedRequest(CallFactory<T> callFactory, Scheduler scheduler,
+                  LatencyTracker latencyTracker, CircuitBreaker circuitBreaker) {
+        this.callFactory = callFactory;
+        this.scheduler = scheduler;
+        this.latencyTracker = latencyTracker;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * execute() sends the request. The listener is called exactly once, either with
+     * the first response to arrive, or with the last failure once every attempt has
+     * failed. If the circuit breaker is open, no request is sent and the listener
+     * fails immediately.
+     * @param listener the listener for the result
+     */
+    synchronized void execute(Listener<T> listener) {
+        if (this.listener != null)
+            throw new IllegalStateException("HedgedRequest can only be executed once");
+        this.listener = listener;
+        if (!circuitBreaker.allowRequest()) {
+            done = true;
+            listener.onFailure(new IllegalStateException("Circuit breaker is open"));
+            return;
+        }
+        startNanos = System.nanoTime();
+        startAttempt();
+        scheduler.postDelayed(hedge, latencyTracker.getP95());
+    }
+
+    /**
+     * cancel() cancels every attempt in flight. The listener will not be called.
+     */
+    synchronized void cancel() {
+        finish();
+    }
+
+    /**
+     * getAttempts() gets the number of attempts that have been sent so far
+     * @return the number of attempts
+     */
+    synchronized int getAttempts() {
+        return attempts;
+    }
+
+    private void startAttempt() {
+        final int attempt = attempts++;
+        calls[attempt] = callFactory.start(new Listener<T>() {
+            @Override
+            public void onResponse(T response) {
+                onAttemptResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception error) {
+                onAttemptFailure(error);
+            }
+        });
+    }
+
+    private synchronized void onAttemptResponse(T response) {
+        if (done)
+            return;
+        finish();
+        latencyTracker.record((System.nanoTime() - startNanos) / 1000000);
+        circuitBreaker.recordSuccess();
+        listener.onResponse(response);
+    }
+
+    private synchronized void onAttemptFailure(Exception error) {
+        if (done)
+            return;
+        failures++;
+        if (attempts < MAX_ATTEMPTS) {
+            scheduler.removeCallbacks(hedge);
+            startAttempt();
+        } else if (failures == attempts) {
+            finish();
+            circuitBreaker.recordFailure();
+            listener.onFailure(error);
+        }
+    }
+
+    private void finish() {
+        done = true;
+        scheduler.removeCallbacks(hedge);
+        for (Call call : calls) {
+            if (call != null)
+                call.cancel();
+        }
+    }
+}
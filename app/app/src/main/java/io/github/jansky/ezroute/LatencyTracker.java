@@ -0,0 +1,63 @@
+package io.github.jansky.ezroute;
+
+import java.util.Arrays;
+
+/**
+ * <b>LatencyTracker</b> keeps a rolling window of the most recent request
+ * latencies, so that the observed tail latency (for example the p95) can be
+ * used to decide when a request is taking unusually long.
+ */
+class LatencyTracker {
+    private static final int MIN_SAMPLES = 5;
+
+    private final long[] samples;
+    private final long defaultMillis;
+    private int count;
+    private int next;
+
+    /**
+     * Constructor for a LatencyTracker
+     * @param windowSize the number of recent latencies to keep
+     * @param defaultMillis the latency reported until enough samples have been recorded
+     */
+    LatencyTracker(int windowSize, long defaultMillis) {
+        this.samples = new long[windowSize];
+        this.defaultMillis = defaultMillis;
+    }
+
+    /**
+     * record() adds a latency to the window, replacing the oldest one if the
+     * window is full
+     * @param millis the latency of a completed request in milliseconds
+     */
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+    }
+
+    /**
+     * percentile() gets the latency below which the given fraction of the
+     * recorded requests completed
+     * @param fraction a fraction between 0 and 1, such as 0.95
+     * @return the latency in milliseconds, or the default latency if too few
+     * requests have been recorded
+     */
+    synchronized long percentile(double fraction) {
+        if (count < MIN_SAMPLES)
+            return defaultMillis;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    /**
+     * getP95() gets the 95th percentile of the recorded latencies
+     * @return the p95 latency in milliseconds
+     */
+    long getP95() {
+        return percentile(0.95);
+    }
+}
@@ -13,10 +13,16 @@ import android.location.Location;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
 import com.google.android.gms.common.api.Status;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
@@ -35,7 +41,11 @@ import com.google.android.libraries.places.api.model.RectangularBounds;
 import com.google.android.libraries.places.widget.AutocompleteSupportFragment;
 import com.google.android.libraries.places.widget.listener.PlaceSelectionListener;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The MapsActivity is the functionality of the Google Maps view
@@ -50,8 +60,10 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     private static final String COARSE_LOCATION = Manifest.permission.ACCESS_COARSE_LOCATION;
     private static final int LOCATION_REQUEST_CODE = 1111;
     private static final float DEFAULT_ZOOM = 17f;
+    private static final int SUGGESTED_TRIPS = 3;
     public static final String DESTINATION_KEY = "io.github.jansky.ezroute.DESTINATION_KEY";
     public static final String ORIGIN_KEY = "io.github.jansky.ezroute.ORIGIN_KEY";
+    public static final String DESTINATION_NAME_KEY = "io.github.jansky.ezroute.DESTINATION_NAME_KEY";
     public static final String BUNDLE = "io.github.jansky.ezroute.BUNDLE";
 
     // variables
@@ -59,13 +71,14 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     private Marker marker;
     private boolean mLocationPermissionGranted = false;
     private FusedLocationProviderClient mFusedLocationProviderClient;
-    private AutocompleteSupportFragment autocompleteSupportFragment;
     private LatLng destinationLocation = null;
+    private String destinationName = null;
     private LatLng originLocation = null;
 
     /**
      * onCreate() overrides the default onCreate method. It will set the screen to
-     * the current location of the user and restrict the search bounds to Singapore
+     * the current location of the user. The rest of the setup is deferred until the
+     * first frame has been drawn, so that the map appears as soon as possible.
      * @param savedInstanceState bundle of information, but not used as it is the default
      *                           starting activity of the application.
      */
@@ -73,8 +86,47 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_maps);
+        findViewById(R.id.navigate_button).setVisibility(View.GONE);
+
+        // check to see if permissions is correct, then initialize map
+        getLocationPermission();
+
+        // everything else waits until the first frame has been drawn
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        markStartup(StartupTracer.FIRST_FRAME);
+                        initDeferred();
+                    }
+                });
+                return true;
+            }
+        });
+        markStartup(StartupTracer.ACTIVITY_CREATED);
+    }
+
+    /**
+     * initDeferred() initializes everything that is not needed to draw the first frame:
+     * the place search, the suggested trips, and the connection to the server
+     */
+    private void initDeferred() {
+        initSearch();
+        markStartup(StartupTracer.SEARCH_READY);
+        loadSuggestedTrips();
+        warmUpConnection();
+    }
+
+    /**
+     * initSearch() initializes Places and sets up the search bar, restricting the
+     * search bounds to Singapore
+     */
+    private void initSearch() {
         final Button navigateButton = findViewById(R.id.navigate_button);
-        navigateButton.setVisibility(View.GONE);
         if (!Places.isInitialized()) {
             Places.initialize(getApplicationContext(), getString(R.string.google_maps_key));
         }
@@ -96,6 +148,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                 // TODO: Get info about the selected place.
                 LatLng latLng = place.getLatLng();
                 destinationLocation = latLng;
+                destinationName = place.getName();
                 updateCamera(latLng, DEFAULT_ZOOM);
                 marker = mMap.addMarker(new MarkerOptions().position(latLng));
                 navigateButton.setVisibility(View.VISIBLE);
@@ -118,9 +171,96 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                         navigateButton.setVisibility(View.GONE);
                     }
                 });
+    }
 
-        // check to see if permissions is correct, then initialize map
-        getLocationPermission();
+    /**
+     * warmUpConnection() makes a cheap request to the server, so that the connection is
+     * already open, with DNS and TLS done, by the time the user searches for a route.
+     * It is sent as a prefetch, so it never holds up a route search.
+     */
+    private void warmUpConnection() {
+        StringRequest request = new StringRequest(Request.Method.GET, RouteFetcher.SERVER_URL,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        markStartup(StartupTracer.HTTP_WARM);
+                    }
+                }, new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        Log.d(TAG, "could not warm up the connection: " + error);
+                    }
+                });
+        request.setShouldCache(false);
+        Singleton.getInstance(this).addToRequestQueue(request, RequestScheduler.Priority.PREFETCH);
+    }
+
+    /**
+     * markStartup() records that a stage of the cold start has been reached
+     * @param marker the name of the StartupTracer marker
+     */
+    private void markStartup(String marker) {
+        ((EZRouteApplication) getApplication()).mark(marker);
+    }
+
+    /**
+     * loadSuggestedTrips() looks up the trips the user is likely to make now from the trip
+     * history, topped up with their most recent trips, and shows them as shortcuts
+     */
+    private void loadSuggestedTrips() {
+        final TripHistoryStore tripHistory = Singleton.getInstance(this).getTripHistory();
+        Singleton.getInstance(this).getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Trip> trips = new ArrayList<>();
+                Set<String> destinations = new HashSet<>();
+                List<Trip> candidates = tripHistory.getPredictedTrips(System.currentTimeMillis(), SUGGESTED_TRIPS);
+                candidates.addAll(tripHistory.getRecentTrips(SUGGESTED_TRIPS));
+                for (Trip trip : candidates) {
+                    if (trips.size() < SUGGESTED_TRIPS
+                            && destinations.add(RouteCache.locationKey(trip.getDstLat(), trip.getDstLng())))
+                        trips.add(trip);
+                }
+                markStartup(StartupTracer.LOCAL_DATA_WARM);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showSuggestedTrips(trips);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * showSuggestedTrips() adds a button for each suggested trip. Tapping a button selects
+     * its destination, as if it had been searched for.
+     * @param trips the suggested Trips
+     */
+    private void showSuggestedTrips(List<Trip> trips) {
+        LinearLayout recentTrips = findViewById(R.id.recent_trips);
+        final Button navigateButton = findViewById(R.id.navigate_button);
+        recentTrips.removeAllViews();
+        for (final Trip trip : trips) {
+            Button button = new Button(this);
+            button.setAllCaps(false);
+            button.setText(trip.getDstName() != null ? trip.getDstName() :
+                    getString(R.string.unnamed_destination));
+            button.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (mMap == null)
+                        return;
+                    destinationLocation = new LatLng(trip.getDstLat(), trip.getDstLng());
+                    destinationName = trip.getDstName();
+                    updateCamera(destinationLocation, DEFAULT_ZOOM);
+                    marker = mMap.addMarker(new MarkerOptions().position(destinationLocation));
+                    navigateButton.setVisibility(View.VISIBLE);
+                }
+            });
+            recentTrips.addView(button);
+        }
+        recentTrips.setVisibility(trips.isEmpty() ? View.GONE : View.VISIBLE);
     }
 
     /**
@@ -133,6 +273,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     public void onMapReady(GoogleMap googleMap) {
         Log.d(TAG, "map is ready to load");
         mMap = googleMap;
+        markStartup(StartupTracer.MAP_READY);
         if (mLocationPermissionGranted) {
             getDeviceLocation();
 
@@ -155,6 +296,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         Bundle bundle = new Bundle();
         bundle.putParcelable(DESTINATION_KEY, destinationLocation);
         bundle.putParcelable(ORIGIN_KEY, originLocation);
+        bundle.putString(DESTINATION_NAME_KEY, destinationName);
         Intent intent = new Intent(this, BusRoutesListActivity.class);
         intent.putExtra(BUNDLE, bundle);
         startActivity(intent);
@@ -0,0 +1,84 @@
+package io.github.jansky.ezroute;
+
+/**
+ * <b>PolylineCodec</b> reads and writes the Encoded Polyline Algorithm Format used
+ * by Google Maps, which stores each vertex as the varint-packed difference from the
+ * previous vertex at a precision of 1e-5 degrees (about one metre).
+ * @see <a href="https://developers.google.com/maps/documentation/utilities/polylinealgorithm">Encoded Polyline Algorithm Format</a>
+ */
+final class PolylineCodec {
+    private static final double PRECISION = 1e5;
+
+    private PolylineCodec() {
+    }
+
+    /**
+     * encode() writes the vertices of a polyline as an encoded polyline
+     * @param lats the latitudes of the vertices in decimal degrees
+     * @param lngs the longitudes of the vertices in decimal degrees
+     * @return the encoded polyline
+     */
+    static String encode(double[] lats, double[] lngs) {
+        StringBuilder encoded = new StringBuilder();
+        long previousLat = 0;
+        long previousLng = 0;
+        for (int i = 0; i < lats.length; i++) {
+            long lat = Math.round(lats[i] * PRECISION);
+            long lng = Math.round(lngs[i] * PRECISION);
+            encodeValue(lat - previousLat, encoded);
+            encodeValue(lng - previousLng, encoded);
+            previousLat = lat;
+            previousLng = lng;
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * decode() reads the vertices of an encoded polyline
+     * @param encoded the encoded polyline
+     * @return two arrays, the latitudes and the longitudes of the vertices
+     * @throws IllegalArgumentException if the polyline is truncated
+     */
+    static double[][] decode(String encoded) {
+        double[] lats = new double[encoded.length() / 2];
+        double[] lngs = new double[encoded.length() / 2];
+        int count = 0;
+        int[] position = {0};
+        long lat = 0;
+        long lng = 0;
+        while (position[0] < encoded.length()) {
+            lat += decodeValue(encoded, position);
+            lng += decodeValue(encoded, position);
+            lats[count] = lat / PRECISION;
+            lngs[count] = lng / PRECISION;
+            count++;
+        }
+        double[][] path = new double[2][count];
+        System.arraycopy(lats, 0, path[0], 0, count);
+        System.arraycopy(lngs, 0, path[1], 0, count);
+        return path;
+    }
+
+    private static void encodeValue(long value, StringBuilder encoded) {
+        value = value < 0 ? ~(value << 1) : value << 1;
+        while (value >= 0x20) {
+            encoded.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        encoded.append((char) (value + 63));
+    }
+
+    private static long decodeValue(String encoded, int[] position) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (position[0] >= encoded.length())
+                throw new IllegalArgumentException("Encoded polyline is truncated");
+            b = encoded.charAt(position[0]++) - 63;
+            result |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
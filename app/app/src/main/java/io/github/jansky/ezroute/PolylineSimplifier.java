@@ -0,0 +1,127 @@
+package io.github.jansky.ezroute;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <b>PolylineSimplifier</b> reduces the number of vertices of a polyline with the
+ * Douglas-Peucker algorithm, so that no removed vertex is further than a given
+ * tolerance from the simplified polyline. Points are given as parallel arrays of
+ * latitudes and longitudes in decimal degrees, and distances are in metres, using
+ * an equirectangular projection that is accurate at the scale of Singapore.
+ */
+final class PolylineSimplifier {
+    static final double EARTH_RADIUS_M = 6371008.8;
+
+    private PolylineSimplifier() {
+    }
+
+    /**
+     * simplify() finds the vertices of the polyline to keep. The first and last
+     * vertices are always kept.
+     * @param lats the latitudes of the vertices
+     * @param lngs the longitudes of the vertices
+     * @param toleranceMeters the maximum distance of a removed vertex from the simplified polyline
+     * @return the indices of the vertices to keep, in increasing order
+     */
+    static int[] simplify(double[] lats, double[] lngs, double toleranceMeters) {
+        int n = lats.length;
+        if (n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++)
+                all[i] = i;
+            return all;
+        }
+
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        project(lats, lngs, xs, ys);
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = 2;
+
+        // an explicit stack avoids deep recursion on long routes
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, n - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            int farthest = -1;
+            double farthestDistance = toleranceMeters;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToSegment(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                ranges.push(new int[]{first, farthest});
+                ranges.push(new int[]{farthest, last});
+            }
+        }
+
+        int[] indices = new int[kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i])
+                indices[j++] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * maxError() measures how far the removed vertices are from the simplified polyline
+     * @param lats the latitudes of the vertices
+     * @param lngs the longitudes of the vertices
+     * @param indices the indices of the kept vertices, as returned by simplify()
+     * @return the largest distance in metres of a removed vertex from the simplified polyline
+     */
+    static double maxError(double[] lats, double[] lngs, int[] indices) {
+        double[] xs = new double[lats.length];
+        double[] ys = new double[lats.length];
+        project(lats, lngs, xs, ys);
+        double maxError = 0;
+        for (int k = 0; k + 1 < indices.length; k++) {
+            int first = indices[k];
+            int last = indices[k + 1];
+            for (int i = first + 1; i < last; i++) {
+                maxError = Math.max(maxError,
+                        distanceToSegment(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]));
+            }
+        }
+        return maxError;
+    }
+
+    /**
+     * metersPerPixel() gets the ground distance covered by one pixel of a Google Map
+     * at the given zoom level and latitude
+     * @param zoom the camera zoom level
+     * @param lat the latitude in decimal degrees
+     * @return the ground distance in metres
+     */
+    static double metersPerPixel(float zoom, double lat) {
+        return 2 * Math.PI * EARTH_RADIUS_M * Math.cos(Math.toRadians(lat)) / (256 * Math.pow(2, zoom));
+    }
+
+    private static void project(double[] lats, double[] lngs, double[] xs, double[] ys) {
+        double cosLat = Math.cos(Math.toRadians(lats[0]));
+        for (int i = 0; i < lats.length; i++) {
+            xs[i] = Math.toRadians(lngs[i]) * cosLat * EARTH_RADIUS_M;
+            ys[i] = Math.toRadians(lats[i]) * EARTH_RADIUS_M;
+        }
+    }
+
+    private static double distanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+}
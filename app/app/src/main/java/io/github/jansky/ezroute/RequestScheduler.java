@@ -0,0 +1,265 @@
+package io.github.jansky.ezroute;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>RequestScheduler</b> decides when each request is handed to the shared network
+ * threads, so that requests the user is waiting for are never stuck behind work the
+ * user did not ask for. Every request belongs to a Priority class:
+ * <ul>
+ *     <li>INTERACTIVE requests, such as a route search, are started as soon as possible</li>
+ *     <li>PREFETCH requests fetch data the user is likely to need soon</li>
+ *     <li>BACKGROUND requests keep local data in sync</li>
+ * </ul>
+ * Each class has its own limit on the number of requests in flight. The limits of the
+ * PREFETCH and BACKGROUND classes together leave at least one network thread free, so
+ * an INTERACTIVE request can always start straight away.
+ *
+ * The scheduler also applies backpressure. While INTERACTIVE requests are waiting or in
+ * flight, or for a cool down period after they have been slow, BACKGROUND requests are
+ * deferred and only one PREFETCH request may be in flight. Pending PREFETCH and
+ * BACKGROUND requests are held in bounded queues: when a queue is full, its oldest
+ * request is dropped, as it is the most likely to be out of date.
+ */
+class RequestScheduler {
+    /**
+     * The priority classes, from most to least important
+     */
+    enum Priority {
+        INTERACTIVE(4, Integer.MAX_VALUE),
+        PREFETCH(2, 16),
+        BACKGROUND(1, 32);
+
+        private final int maxInFlight;
+        private final int maxPending;
+
+        Priority(int maxInFlight, int maxPending) {
+            this.maxInFlight = maxInFlight;
+            this.maxPending = maxPending;
+        }
+
+        /**
+         * getMaxInFlight() gets the number of requests of the class that may be in flight at once
+         * @return the concurrency limit of the class
+         */
+        int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * getMaxPending() gets the number of requests of the class that may wait to be started
+         * @return the queue capacity of the class
+         */
+        int getMaxPending() {
+            return maxPending;
+        }
+    }
+
+    /**
+     * A Job is a request waiting to be scheduled
+     */
+    interface Job {
+        /**
+         * start() sends the request. The done callback must be run exactly once, when the
+         * request has finished, whether it succeeded, failed or was cancelled.
+         * @param done the callback to run when the request has finished
+         */
+        void start(Runnable done);
+
+        /**
+         * onDropped() is called instead of start() if the request is dropped
+         */
+        void onDropped();
+    }
+
+    private static class Scheduled {
+        final Job job;
+        final long submittedNanos;
+
+        Scheduled(Job job, long submittedNanos) {
+            this.job = job;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    private final HedgedRequest.Scheduler scheduler;
+    private final long slowMillis;
+    private final long coolDownMillis;
+    private final LatencyTracker interactiveLatency = new LatencyTracker(10, 0);
+
+    private final Map<Priority, ArrayDeque<Scheduled>> pending = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> inFlight = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> dropped = new EnumMap<>(Priority.class);
+    private long slowUntilNanos;
+    private boolean recheckPosted;
+
+    private final Runnable recheck = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RequestScheduler.this) {
+                recheckPosted = false;
+            }
+            dispatch();
+        }
+    };
+
+    /**
+     * Constructor for a RequestScheduler
+     * @param scheduler schedules the restart of deferred requests once the cool down has passed
+     * @param slowMillis the p95 latency, from submission to completion, above which
+     *                   INTERACTIVE requests are considered slow
+     * @param coolDownMillis how long lower priority requests are held back after a slow
+     *                       INTERACTIVE request
+     */
+    RequestScheduler(HedgedRequest.Scheduler scheduler, long slowMillis, long coolDownMillis) {
+        this.scheduler = scheduler;
+        this.slowMillis = slowMillis;
+        this.coolDownMillis = coolDownMillis;
+        for (Priority priority : Priority.values()) {
+            pending.put(priority, new ArrayDeque<Scheduled>());
+            inFlight.put(priority, 0);
+            dropped.put(priority, 0);
+        }
+    }
+
+    /**
+     * submit() schedules a request. It is started straight away if its class has room,
+     * otherwise it waits its turn.
+     * @param priority the priority class of the request
+     * @param job the request
+     */
+    void submit(Priority priority, Job job) {
+        Job droppedJob = null;
+        synchronized (this) {
+            ArrayDeque<Scheduled> queue = pending.get(priority);
+            if (queue.size() >= priority.getMaxPending()) {
+                droppedJob = queue.removeFirst().job;
+                dropped.put(priority, dropped.get(priority) + 1);
+            }
+            queue.addLast(new Scheduled(job, System.nanoTime()));
+        }
+        if (droppedJob != null)
+            droppedJob.onDropped();
+        dispatch();
+    }
+
+    /**
+     * getInFlight() gets the number of requests of a class that have started but not finished
+     * @param priority the priority class
+     * @return the number of requests in flight
+     */
+    synchronized int getInFlight(Priority priority) {
+        return inFlight.get(priority);
+    }
+
+    /**
+     * getPending() gets the number of requests of a class waiting to be started
+     * @param priority the priority class
+     * @return the number of pending requests
+     */
+    synchronized int getPending(Priority priority) {
+        return pending.get(priority).size();
+    }
+
+    /**
+     * getDropped() gets the number of requests of a class dropped so far
+     * @param priority the priority class
+     * @return the number of dropped requests
+     */
+    synchronized int getDropped(Priority priority) {
+        return dropped.get(priority);
+    }
+
+    /**
+     * isBackpressured() checks whether lower priority requests are being held back
+     * @return true if INTERACTIVE requests are waiting, in flight, or were recently slow
+     */
+    synchronized boolean isBackpressured() {
+        return interactiveBusy() || System.nanoTime() < slowUntilNanos;
+    }
+
+    /**
+     * dispatch() starts as many pending requests as the limits allow, most important first.
+     * The jobs are started outside the lock, as a job may finish synchronously.
+     */
+    private void dispatch() {
+        List<Scheduled> toStart = new ArrayList<>();
+        List<Priority> priorities = new ArrayList<>();
+        synchronized (this) {
+            for (Priority priority : Priority.values()) {
+                ArrayDeque<Scheduled> queue = pending.get(priority);
+                int limit = limit(priority);
+                while (!queue.isEmpty() && inFlight.get(priority) < limit) {
+                    toStart.add(queue.removeFirst());
+                    priorities.add(priority);
+                    inFlight.put(priority, inFlight.get(priority) + 1);
+                }
+            }
+            postRecheckIfDeferred();
+        }
+        for (int i = 0; i < toStart.size(); i++)
+            start(priorities.get(i), toStart.get(i));
+    }
+
+    private void start(final Priority priority, final Scheduled scheduled) {
+        scheduled.job.start(new Runnable() {
+            private boolean finished;
+
+            @Override
+            public void run() {
+                synchronized (RequestScheduler.this) {
+                    if (finished)
+                        return;
+                    finished = true;
+                    inFlight.put(priority, inFlight.get(priority) - 1);
+                    if (priority == Priority.INTERACTIVE)
+                        recordInteractiveLatency((System.nanoTime() - scheduled.submittedNanos) / 1000000);
+                }
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * limit() gets the number of requests of a class that may be in flight right now
+     */
+    private int limit(Priority priority) {
+        switch (priority) {
+            case PREFETCH:
+                return isBackpressured() ? Math.min(1, priority.getMaxInFlight()) : priority.getMaxInFlight();
+            case BACKGROUND:
+                return isBackpressured() ? 0 : priority.getMaxInFlight();
+            default:
+                return priority.getMaxInFlight();
+        }
+    }
+
+    private boolean interactiveBusy() {
+        return inFlight.get(Priority.INTERACTIVE) > 0 || !pending.get(Priority.INTERACTIVE).isEmpty();
+    }
+
+    private void recordInteractiveLatency(long millis) {
+        interactiveLatency.record(millis);
+        if (millis > slowMillis || interactiveLatency.getP95() > slowMillis)
+            slowUntilNanos = System.nanoTime() + coolDownMillis * 1000000;
+    }
+
+    /**
+     * postRecheckIfDeferred() makes sure that requests held back only by the cool down are
+     * started once it has passed, even if no other request finishes in the meantime
+     */
+    private void postRecheckIfDeferred() {
+        if (recheckPosted || interactiveBusy())
+            return;
+        long remainingNanos = slowUntilNanos - System.nanoTime();
+        if (remainingNanos <= 0 || (pending.get(Priority.PREFETCH).isEmpty() &&
+                pending.get(Priority.BACKGROUND).isEmpty()))
+            return;
+        recheckPosted = true;
+        scheduler.postDelayed(recheck, remainingNanos / 1000000 + 1);
+    }
+}
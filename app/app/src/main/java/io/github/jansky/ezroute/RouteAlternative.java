@@ -0,0 +1,59 @@
+package io.github.jansky.ezroute;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * <b>RouteAlternative</b> is one of the alternative routes found between the
+ * origin and destination: the BusRoutes to take, and the estimated travel time.
+ * The server ranks alternatives by travel time, best first.
+ */
+class RouteAlternative {
+    static final int UNKNOWN_TRAVEL_TIME = -1;
+
+    private final List<BusRoute> busRoutes;
+    private final int travelTime;
+
+    /**
+     * Constructor for a RouteAlternative
+     * @param busRoutes a list of BusRoutes sorted in order of which bus needs to be boarded first
+     * @param travelTime the estimated travel time in minutes, or UNKNOWN_TRAVEL_TIME
+     */
+    RouteAlternative(List<BusRoute> busRoutes, int travelTime) {
+        this.busRoutes = busRoutes;
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * getBusRoutes() gets the BusRoutes of the alternative
+     * @return a list of BusRoutes sorted in order of which bus needs to be boarded first
+     */
+    List<BusRoute> getBusRoutes() {
+        return busRoutes;
+    }
+
+    /**
+     * getTravelTime() gets the estimated travel time of the alternative, including
+     * the time spent waiting for the first bus and transferring
+     * @return the travel time in minutes, or UNKNOWN_TRAVEL_TIME if it is not known
+     */
+    int getTravelTime() {
+        return travelTime;
+    }
+
+    /**
+     * RouteAlternative equality checks to see if the BusRoutes and travel time are the same
+     * @param obj Any object
+     * @return true if both RouteAlternatives have equal BusRoutes and the same travel time
+     */
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (obj instanceof RouteAlternative) {
+            RouteAlternative alternative = (RouteAlternative) obj;
+            return this.travelTime == alternative.getTravelTime() &&
+                    this.busRoutes.equals(alternative.getBusRoutes());
+        }
+        return false;
+    }
+}
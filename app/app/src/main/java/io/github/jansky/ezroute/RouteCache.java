@@ -0,0 +1,73 @@
+package io.github.jansky.ezroute;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <b>RouteCache</b> remembers the last good list of BusRoutes for each
+ * origin and destination pair, so that a previous result can be shown
+ * when the server cannot be reached. The least recently used pairs are
+ * evicted once the cache is full.
+ */
+class RouteCache {
+    private final LinkedHashMap<String, List<BusRoute>> routes;
+
+    /**
+     * Constructor for a RouteCache
+     * @param maxEntries the maximum number of origin and destination pairs to remember
+     */
+    RouteCache(final int maxEntries) {
+        this.routes = new LinkedHashMap<String, List<BusRoute>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<BusRoute>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * key() creates the cache key of an origin and destination pair
+     * @param orgLat the origin location's latitude in decimal degrees
+     * @param orgLng the origin location's longitude in decimal degrees
+     * @param dstLat the destination location's latitude in decimal degrees
+     * @param dstLng the destination location's longitude in decimal degrees
+     * @return the cache key
+     */
+    static String key(double orgLat, double orgLng, double dstLat, double dstLng) {
+        return locationKey(orgLat, orgLng) + ">" + locationKey(dstLat, dstLng);
+    }
+
+    /**
+     * locationKey() creates the key of a location. Coordinates are rounded to three
+     * decimal places (about 100 metres), which is well within the distance the server
+     * searches for nearby bus stops, so nearby locations share the same key.
+     * @param lat the latitude in decimal degrees
+     * @param lng the longitude in decimal degrees
+     * @return the location key
+     */
+    static String locationKey(double lat, double lng) {
+        return String.format(Locale.US, "%.3f,%.3f", lat, lng);
+    }
+
+    /**
+     * put() stores the BusRoutes found for an origin and destination pair
+     * @param key the cache key from key()
+     * @param busRoutes the BusRoutes returned by the server
+     */
+    synchronized void put(String key, List<BusRoute> busRoutes) {
+        routes.put(key, new ArrayList<>(busRoutes));
+    }
+
+    /**
+     * get() gets the last BusRoutes stored for an origin and destination pair
+     * @param key the cache key from key()
+     * @return the BusRoutes, or null if none are stored
+     */
+    synchronized List<BusRoute> get(String key) {
+        List<BusRoute> busRoutes = routes.get(key);
+        return busRoutes == null ? null : new ArrayList<>(busRoutes);
+    }
+}
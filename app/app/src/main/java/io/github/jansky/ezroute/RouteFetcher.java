@@ -0,0 +1,150 @@
+package io.github.jansky.ezroute;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <b>RouteFetcher</b> gets a number of alternative routes between two locations
+ * from the backend server, which searches for them within a deadline. Requests are
+ * hedged once the observed p95 latency has elapsed, and go through a circuit breaker.
+ * When the server cannot be reached, the last good BusRoutes for the same origin and
+ * destination are returned instead, marked as stale. The routes may walk between
+ * nearby bus stops, which the server only does for clients that ask for it.
+ */
+class RouteFetcher {
+    private static final String TAG = "RouteFetcher";
+    static final String SERVER_URL = "https://ezroute.janskyd.com/";
+    static final String FIND_ROUTE_URL = SERVER_URL + "findroute";
+    private static final int ATTEMPT_TIMEOUT_MS = 10000;
+    static final int ALTERNATIVES = 3;
+    /** how long the server may spend searching for alternatives before returning the best found */
+    static final int SEARCH_DEADLINE_MS = 1000;
+
+    /**
+     * A Callback receives the routes found by the RouteFetcher
+     */
+    interface Callback {
+        /**
+         * onRoutes() is called with the routes found
+         * @param alternatives the RouteAlternatives, best first
+         * @param stale true if the server could not be reached and the only
+         *              RouteAlternative is from an earlier search
+         */
+        void onRoutes(List<RouteAlternative> alternatives, boolean stale);
+
+        /**
+         * onError() is called if no route could be found and none is cached
+         */
+        void onError();
+    }
+
+    private final Singleton singleton;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Constructor for a RouteFetcher
+     * @param context context of the application
+     */
+    RouteFetcher(Context context) {
+        this.singleton = Singleton.getInstance(context);
+    }
+
+    /**
+     * fetch() requests the routes from the origin location to the destination location
+     * @param origin the origin location
+     * @param destination the destination location
+     * @param callback the callback to receive the routes, called on the main thread
+     */
+    void fetch(LatLng origin, LatLng destination, final Callback callback) {
+        final String url = FIND_ROUTE_URL + "?originlong=" + origin.longitude +
+                "&originlat=" + origin.latitude + "&destlong=" + destination.longitude +
+                "&destlat=" + destination.latitude + "&alternatives=" + ALTERNATIVES +
+                "&deadline=" + SEARCH_DEADLINE_MS + "&walking=1";
+        final String cacheKey = RouteCache.key(origin.latitude, origin.longitude,
+                destination.latitude, destination.longitude);
+
+        HedgedRequest.CallFactory<List<RouteAlternative>> callFactory =
+                new HedgedRequest.CallFactory<List<RouteAlternative>>() {
+            @Override
+            public HedgedRequest.Call start(final HedgedRequest.Listener<List<RouteAlternative>> listener) {
+                return newCall(url, listener);
+            }
+        };
+        HedgedRequest.Scheduler scheduler = new HedgedRequest.Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                handler.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
+
+        new HedgedRequest<>(callFactory, scheduler, singleton.getLatencyTracker(),
+                singleton.getCircuitBreaker()).execute(new HedgedRequest.Listener<List<RouteAlternative>>() {
+            @Override
+            public void onResponse(List<RouteAlternative> alternatives) {
+                if (alternatives.isEmpty()) {
+                    callback.onError();
+                    return;
+                }
+                singleton.getRouteCache().put(cacheKey, alternatives.get(0).getBusRoutes());
+                callback.onRoutes(alternatives, false);
+            }
+
+            @Override
+            public void onFailure(Exception error) {
+                Log.e(TAG, error.toString());
+                List<BusRoute> cached = singleton.getRouteCache().get(cacheKey);
+                if (cached != null) {
+                    callback.onRoutes(Collections.singletonList(
+                            new RouteAlternative(cached, RouteAlternative.UNKNOWN_TRAVEL_TIME)), true);
+                } else {
+                    callback.onError();
+                }
+            }
+        });
+    }
+
+    /**
+     * newCall() sends a single attempt of the request through the shared RequestQueue.
+     * Retries are left to the HedgedRequest, so the attempt itself is not retried.
+     */
+    private HedgedRequest.Call newCall(String url, final HedgedRequest.Listener<List<RouteAlternative>> listener) {
+        final RouteRequest routeRequest = new RouteRequest(url, new Response.Listener<List<RouteAlternative>>() {
+
+            @Override
+            public void onResponse(List<RouteAlternative> alternatives) {
+                Log.d(TAG, "received " + alternatives.size() + " alternative routes");
+                listener.onResponse(alternatives);
+            }
+        }, new Response.ErrorListener() {
+
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                listener.onFailure(error);
+            }
+        });
+        routeRequest.setRetryPolicy(new DefaultRetryPolicy(ATTEMPT_TIMEOUT_MS, 0,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        singleton.addToRequestQueue(routeRequest, RequestScheduler.Priority.INTERACTIVE);
+        return new HedgedRequest.Call() {
+            @Override
+            public void cancel() {
+                routeRequest.cancel();
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.jansky.ezroute;
+
+/**
+ * <b>RouteGeometry</b> is the path of a BusRoute on the map, pre-simplified for a
+ * number of camera zoom levels. At each level, the path is simplified so that it is
+ * never more than about a pixel and a half away from the full path, and has at most
+ * MAX_VERTICES vertices. The simplified paths are kept as encoded polylines, and only
+ * decoded when they are drawn.
+ */
+class RouteGeometry {
+    static final int[] ZOOM_LEVELS = {10, 12, 14, 16, 18};
+    static final int MAX_VERTICES = 128;
+    static final double TOLERANCE_PIXELS = 1.5;
+
+    private final String[] encodedPaths = new String[ZOOM_LEVELS.length];
+    private final int[] vertexCounts = new int[ZOOM_LEVELS.length];
+
+    /**
+     * Constructor for a RouteGeometry
+     * @param lats the latitudes of the full path in decimal degrees
+     * @param lngs the longitudes of the full path in decimal degrees
+     */
+    RouteGeometry(double[] lats, double[] lngs) {
+        for (int level = 0; level < ZOOM_LEVELS.length; level++) {
+            double tolerance = lats.length == 0 ? 0 : TOLERANCE_PIXELS *
+                    PolylineSimplifier.metersPerPixel(ZOOM_LEVELS[level], lats[0]);
+            int[] indices = PolylineSimplifier.simplify(lats, lngs, tolerance);
+            while (indices.length > MAX_VERTICES) {
+                tolerance *= 2;
+                indices = PolylineSimplifier.simplify(lats, lngs, tolerance);
+            }
+            double[] levelLats = new double[indices.length];
+            double[] levelLngs = new double[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                levelLats[i] = lats[indices[i]];
+                levelLngs[i] = lngs[indices[i]];
+            }
+            encodedPaths[level] = PolylineCodec.encode(levelLats, levelLngs);
+            vertexCounts[level] = indices.length;
+        }
+    }
+
+    /**
+     * fromEncodedPath() creates the RouteGeometry of a full path
+     * @param encodedPath the full path as an encoded polyline
+     * @return the RouteGeometry
+     */
+    static RouteGeometry fromEncodedPath(String encodedPath) {
+        double[][] path = PolylineCodec.decode(encodedPath);
+        return new RouteGeometry(path[0], path[1]);
+    }
+
+    /**
+     * levelFor() finds the level to draw at a camera zoom level, which is the least
+     * detailed level that is at least as detailed as the zoom level. A level drawn at a
+     * lower zoom than its own is at most TOLERANCE_PIXELS away from the full path, since
+     * every zoom level out halves the distances on screen.
+     * @param zoom the camera zoom level
+     * @return the level, an index into ZOOM_LEVELS
+     */
+    static int levelFor(float zoom) {
+        int level = 0;
+        while (level + 1 < ZOOM_LEVELS.length && ZOOM_LEVELS[level] < zoom)
+            level++;
+        return level;
+    }
+
+    /**
+     * getEncodedPath() gets the simplified path of a level as an encoded polyline
+     * @param level the level, an index into ZOOM_LEVELS
+     * @return the encoded polyline
+     */
+    String getEncodedPath(int level) {
+        return encodedPaths[level];
+    }
+
+    /**
+     * getPath() gets the simplified path of a level
+     * @param level the level, an index into ZOOM_LEVELS
+     * @return two arrays, the latitudes and the longitudes of the vertices
+     */
+    double[][] getPath(int level) {
+        return PolylineCodec.decode(encodedPaths[level]);
+    }
+
+    /**
+     * getVertexCount() gets the number of vertices of the simplified path of a level
+     * @param level the level, an index into ZOOM_LEVELS
+     * @return the number of vertices
+     */
+    int getVertexCount(int level) {
+        return vertexCounts[level];
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.jansky.ezroute;
+
+import android.graphics.Color;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>RouteMapRenderer</b> draws the paths of BusRoutes on a GoogleMap as polylines,
+ * one per bus. The paths are pre-simplified for a number of zoom levels by
+ * RouteGeometry, and the polylines are swapped to the matching level whenever the
+ * camera stops moving, so that the number of vertices on the map stays bounded.
+ */
+class RouteMapRenderer implements GoogleMap.OnCameraIdleListener {
+    private static final int[] COLORS = {
+            Color.parseColor("#008577"), Color.parseColor("#D81B60"), Color.parseColor("#3F51B5")
+    };
+    private static final float WIDTH = 12f;
+    private static final int PADDING = 64;
+
+    private final GoogleMap map;
+    private final List<RouteGeometry> geometries = new ArrayList<>();
+    private final List<Polyline> polylines = new ArrayList<>();
+    private int level = -1;
+
+    /**
+     * Constructor for a RouteMapRenderer
+     * @param map the GoogleMap to draw on
+     */
+    RouteMapRenderer(GoogleMap map) {
+        this.map = map;
+    }
+
+    /**
+     * render() draws the BusRoutes that have a path, and moves the camera to show all of them
+     * @param busRoutes the BusRoutes to draw
+     */
+    void render(List<BusRoute> busRoutes) {
+        LatLngBounds.Builder bounds = new LatLngBounds.Builder();
+        for (BusRoute busRoute : busRoutes) {
+            if (busRoute.getEncodedPath() == null)
+                continue;
+            RouteGeometry geometry = RouteGeometry.fromEncodedPath(busRoute.getEncodedPath());
+            List<LatLng> fullPath = toLatLngs(geometry.getPath(RouteGeometry.ZOOM_LEVELS.length - 1));
+            if (fullPath.isEmpty())
+                continue;
+            for (LatLng latLng : fullPath)
+                bounds.include(latLng);
+            geometries.add(geometry);
+            polylines.add(map.addPolyline(new PolylineOptions()
+                    .color(COLORS[polylines.size() % COLORS.length])
+                    .width(WIDTH)
+                    .addAll(fullPath)));
+        }
+        if (polylines.isEmpty())
+            return;
+
+        level = RouteGeometry.ZOOM_LEVELS.length - 1;
+        map.setOnCameraIdleListener(this);
+        final LatLngBounds routeBounds = bounds.build();
+        map.setOnMapLoadedCallback(new GoogleMap.OnMapLoadedCallback() {
+            @Override
+            public void onMapLoaded() {
+                map.moveCamera(CameraUpdateFactory.newLatLngBounds(routeBounds, PADDING));
+            }
+        });
+    }
+
+    /**
+     * onCameraIdle() swaps the polylines to the simplified paths of the new zoom level,
+     * if it has changed
+     */
+    @Override
+    public void onCameraIdle() {
+        int newLevel = RouteGeometry.levelFor(map.getCameraPosition().zoom);
+        if (newLevel == level)
+            return;
+        level = newLevel;
+        for (int i = 0; i < polylines.size(); i++)
+            polylines.get(i).setPoints(toLatLngs(geometries.get(i).getPath(level)));
+    }
+
+    private static List<LatLng> toLatLngs(double[][] path) {
+        List<LatLng> latLngs = new ArrayList<>(path[0].length);
+        for (int i = 0; i < path[0].length; i++)
+            latLngs.add(new LatLng(path[0][i], path[1][i]));
+        return latLngs;
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.jansky.ezroute;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>RouteParser</b> turns the response of the server's /findroute endpoint
+ * into BusRoutes, one for each segment of the route, or into RouteAlternatives
+ * when the server was asked for alternative routes.
+ */
+final class RouteParser {
+
+    private RouteParser() {
+    }
+
+    /**
+     * parseRoutes() reads the segments of a /findroute JSON response
+     * @param response the JSON response of the server
+     * @return a list of BusRoutes sorted in order of which bus needs to be boarded first
+     * @throws JSONException if the response is missing a required field
+     * @throws IllegalArgumentException if the server could not find a route
+     */
+    static List<BusRoute> parseRoutes(JSONObject response) throws JSONException {
+        if (!response.getString("error").equals("none"))
+            throw new IllegalArgumentException(response.getString("error"));
+
+        return parseSegments(response.getJSONObject("route"));
+    }
+
+    /**
+     * parseAlternatives() reads the alternative routes of a /findroute JSON response.
+     * A response with a single route is read as one alternative.
+     * @param response the JSON response of the server
+     * @return the RouteAlternatives, best first
+     * @throws JSONException if the response is missing a required field
+     * @throws IllegalArgumentException if the server could not find a route
+     */
+    static List<RouteAlternative> parseAlternatives(JSONObject response) throws JSONException {
+        if (!response.getString("error").equals("none"))
+            throw new IllegalArgumentException(response.getString("error"));
+
+        List<RouteAlternative> alternatives = new ArrayList<>();
+        JSONArray routes = response.optJSONArray("routes");
+        if (routes == null) {
+            alternatives.add(new RouteAlternative(parseSegments(response.getJSONObject("route")),
+                    RouteAlternative.UNKNOWN_TRAVEL_TIME));
+            return alternatives;
+        }
+        for (int i = 0; i < routes.length(); i++) {
+            JSONObject route = routes.getJSONObject(i);
+            alternatives.add(new RouteAlternative(parseSegments(route),
+                    (int) Math.round(route.getDouble("travelTime"))));
+        }
+        return alternatives;
+    }
+
+    /**
+     * parseSegments() reads the segments of a route, where walking segments become
+     * walking BusRoutes
+     * @param route the route, as returned by the server
+     * @return a list of BusRoutes sorted in order of which bus needs to be boarded first
+     */
+    private static List<BusRoute> parseSegments(JSONObject route) throws JSONException {
+        List<BusRoute> busRoutes = new ArrayList<>();
+        JSONArray segments = route.getJSONArray("segments");
+        for (int i = 0; i < segments.length(); i++) {
+            Bus bus = segments.getJSONObject(i).optBoolean("walking") ? Bus.walking() :
+                    new Bus(segments.getJSONObject(i).getJSONObject("busService").getInt("ServiceNo"));
+            JSONArray busStops = segments.getJSONObject(i).getJSONArray("busStops");
+            BusStop orgBusStop = new BusStop(busStops.getJSONObject(0)
+                    .getString("Description"));
+            BusStop dstBusStop = new BusStop(busStops.getJSONObject(busStops.length() - 1)
+                    .getString("Description"));
+            int numStops = busStops.length();
+            busRoutes.add(new BusRoute(bus, orgBusStop, dstBusStop, numStops, encodePath(busStops)));
+        }
+        return busRoutes;
+    }
+
+    /**
+     * encodePath() encodes the locations of the bus stops as a polyline
+     * @param busStops the bus stops of a segment, each with a GeoJSON Point Location
+     * @return the encoded polyline, or null if a bus stop has no location
+     */
+    private static String encodePath(JSONArray busStops) throws JSONException {
+        double[] lats = new double[busStops.length()];
+        double[] lngs = new double[busStops.length()];
+        for (int i = 0; i < busStops.length(); i++) {
+            JSONObject location = busStops.getJSONObject(i).optJSONObject("Location");
+            JSONArray coordinates = location == null ? null : location.optJSONArray("coordinates");
+            if (coordinates == null || coordinates.length() < 2)
+                return null;
+            lngs[i] = coordinates.getDouble(0);
+            lats[i] = coordinates.getDouble(1);
+        }
+        return PolylineCodec.encode(lats, lngs);
+    }
+}
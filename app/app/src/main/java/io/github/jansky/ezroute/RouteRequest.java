@@ -0,0 +1,82 @@
+package io.github.jansky.ezroute;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>RouteRequest</b> is a Volley request to the server's /findroute endpoint.
+ * It asks for the compact binary route encoding and decodes it straight into
+ * RouteAlternatives, falling back to the JSON response if the server does not
+ * support the compact encoding. A response saying that no route could be found
+ * is delivered as an empty list.
+ */
+class RouteRequest extends Request<List<RouteAlternative>> {
+    private static final String ACCEPT = CompactRouteCodec.mediaType(CompactRouteCodec.VERSION_ALTERNATIVES) + ", "
+            + CompactRouteCodec.mediaType(CompactRouteCodec.VERSION) + ", "
+            + CompactRouteCodec.MEDIA_TYPE + ", application/json;q=0.5";
+
+    private final Response.Listener<List<RouteAlternative>> listener;
+
+    /**
+     * Constructor for a RouteRequest
+     * @param url the /findroute url, including the origin and destination query parameters
+     * @param listener the listener for the RouteAlternatives
+     * @param errorListener the listener for network and parse errors
+     */
+    RouteRequest(String url, Response.Listener<List<RouteAlternative>> listener,
+                 Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.listener = listener;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", ACCEPT);
+        return headers;
+    }
+
+    /**
+     * parseNetworkResponse() decodes the response on a worker thread, using the
+     * Content-Type of the response to choose between the compact and JSON formats
+     * @param response the response from the network
+     * @return the parsed RouteAlternatives, or an error
+     */
+    @Override
+    protected Response<List<RouteAlternative>> parseNetworkResponse(NetworkResponse response) {
+        String contentType = response.headers == null ? null : response.headers.get("Content-Type");
+        try {
+            List<RouteAlternative> alternatives;
+            if (contentType != null && contentType.startsWith(CompactRouteCodec.MEDIA_TYPE)) {
+                alternatives = CompactRouteCodec.decodeAlternatives(response.data);
+            } else {
+                String json = new String(response.data,
+                        HttpHeaderParser.parseCharset(response.headers, "utf-8"));
+                try {
+                    alternatives = RouteParser.parseAlternatives(new JSONObject(json));
+                } catch (IllegalArgumentException e) {
+                    // the server answered, but there is no route to the destination
+                    alternatives = Collections.emptyList();
+                }
+            }
+            return Response.success(alternatives, HttpHeaderParser.parseCacheHeaders(response));
+        } catch (Exception e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(List<RouteAlternative> response) {
+        listener.onResponse(response);
+    }
+}
@@ -1,24 +1,64 @@
 package io.github.jansky.ezroute;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
 import com.android.volley.toolbox.Volley;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * The Singleton class is a singleton that handles requests for the server calculations.
  * This code was adapted from the example code found on
  * https://developer.android.com/training/volley/requestqueue
  */
 class Singleton {
+    /** the p95 latency above which route searches are considered slow */
+    private static final long SLOW_INTERACTIVE_MS = 2500;
+    /** how long prefetch and background requests are held back after slow route searches */
+    private static final long BACKPRESSURE_COOL_DOWN_MS = 10000;
+
     private static Singleton instance;
     private RequestQueue requestQueue;
     private static Context ctx;
+    private final LatencyTracker latencyTracker = new LatencyTracker(50, 3000);
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 30000);
+    private final RouteCache routeCache = new RouteCache(32);
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private TripHistoryStore tripHistory;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final RequestScheduler requestScheduler = new RequestScheduler(new HedgedRequest.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    }, SLOW_INTERACTIVE_MS, BACKPRESSURE_COOL_DOWN_MS);
+    // the callback to tell the RequestScheduler when each request in the RequestQueue finishes
+    private final Map<Request<?>, Runnable> finishCallbacks = new ConcurrentHashMap<>();
 
     private Singleton(Context context) {
         ctx = context;
         requestQueue = getRequestQueue();
+        requestQueue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(Request<Object> request) {
+                Runnable done = finishCallbacks.remove(request);
+                if (done != null)
+                    done.run();
+            }
+        });
     }
 
     static synchronized Singleton getInstance(Context context) {
@@ -37,7 +77,90 @@ class Singleton {
         return requestQueue;
     }
 
+    /**
+     * addToRequestQueue() sends a request the user is waiting for
+     * @param req the request
+     */
     <T> void addToRequestQueue(Request<T> req) {
-        getRequestQueue().add(req);
+        addToRequestQueue(req, RequestScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * addToRequestQueue() sends a request once the RequestScheduler allows it. If it is
+     * dropped instead, its error listener receives a VolleyError.
+     * @param req the request
+     * @param priority the priority class of the request
+     */
+    <T> void addToRequestQueue(final Request<T> req, RequestScheduler.Priority priority) {
+        requestScheduler.submit(priority, new RequestScheduler.Job() {
+            @Override
+            public void start(Runnable done) {
+                finishCallbacks.put(req, done);
+                getRequestQueue().add(req);
+            }
+
+            @Override
+            public void onDropped() {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!req.isCanceled())
+                            req.deliverError(new VolleyError("Request dropped by the RequestScheduler"));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * getRequestScheduler() gets the scheduler that decides when requests are sent
+     * @return the shared RequestScheduler
+     */
+    RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * getLatencyTracker() gets the latencies of recent requests to the server
+     * @return the shared LatencyTracker
+     */
+    LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * getCircuitBreaker() gets the circuit breaker guarding requests to the server
+     * @return the shared CircuitBreaker
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * getRouteCache() gets the last good BusRoutes for recent searches
+     * @return the shared RouteCache
+     */
+    RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * getTripHistory() gets the local database of past trips
+     * @return the shared TripHistoryStore
+     */
+    synchronized TripHistoryStore getTripHistory() {
+        if (tripHistory == null) {
+            tripHistory = new TripHistoryStore(ctx.getApplicationContext());
+        }
+        return tripHistory;
+    }
+
+    /**
+     * getBackgroundExecutor() gets the executor for disk work that must stay off the
+     * main thread, such as reading and writing the trip history
+     * @return the shared background executor
+     */
+    ExecutorService getBackgroundExecutor() {
+        return backgroundExecutor;
     }
 }
@@ -0,0 +1,93 @@
+package io.github.jansky.ezroute;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>StartupTracer</b> records when each stage of a cold start is reached, measured from
+ * the start of the process. Only the first time each marker is reached counts, so
+ * recreating an activity later does not change the measurements.
+ *
+ * Once every marker the app needs before the user can search has been reached, the
+ * INTERACTIVE (time to interactive) marker is recorded as well.
+ */
+class StartupTracer {
+    static final String APPLICATION_CREATED = "application_created";
+    static final String ACTIVITY_CREATED = "activity_created";
+    static final String FIRST_FRAME = "first_frame";
+    static final String MAP_READY = "map_ready";
+    static final String SEARCH_READY = "search_ready";
+    static final String INTERACTIVE = "interactive";
+    static final String LOCAL_DATA_WARM = "local_data_warm";
+    static final String HTTP_WARM = "http_warm";
+
+    /**
+     * A Listener is told about each marker as it is recorded
+     */
+    interface Listener {
+        /**
+         * onMark() is called when a marker is reached for the first time
+         * @param marker the name of the marker
+         * @param millis the time since the start of the process in milliseconds
+         */
+        void onMark(String marker, long millis);
+    }
+
+    private final long originMillis;
+    private final Listener listener;
+    private final List<String> interactiveAfter;
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    /**
+     * Constructor for a StartupTracer
+     * @param originMillis the time the process started, on the same clock as the markers
+     * @param listener the listener to tell about each marker
+     * @param interactiveAfter the markers that must all be reached before the app is interactive
+     */
+    StartupTracer(long originMillis, Listener listener, String... interactiveAfter) {
+        this.originMillis = originMillis;
+        this.listener = listener;
+        this.interactiveAfter = Arrays.asList(interactiveAfter);
+    }
+
+    /**
+     * mark() records that a marker has been reached, unless it was reached before
+     * @param marker the name of the marker
+     * @param nowMillis the current time, on the same clock as the origin
+     */
+    synchronized void mark(String marker, long nowMillis) {
+        if (marks.containsKey(marker))
+            return;
+        long millis = nowMillis - originMillis;
+        marks.put(marker, millis);
+        listener.onMark(marker, millis);
+        if (!marks.containsKey(INTERACTIVE) && marks.keySet().containsAll(interactiveAfter))
+            mark(INTERACTIVE, nowMillis);
+    }
+
+    /**
+     * getMillis() gets when a marker was reached
+     * @param marker the name of the marker
+     * @return the time since the start of the process in milliseconds, or null if the
+     * marker has not been reached
+     */
+    synchronized Long getMillis(String marker) {
+        return marks.get(marker);
+    }
+
+    /**
+     * report() describes every marker reached so far, in the order they were reached
+     * @return the markers, e.g. "activity_created=180 first_frame=420"
+     */
+    synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            if (report.length() > 0)
+                report.append(' ');
+            report.append(mark.getKey()).append('=').append(mark.getValue());
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.jansky.ezroute;
+
+import java.util.List;
+
+/**
+ * <b>Trip</b> is a route search that the user has made: where it went from and to,
+ * when it was made, and the BusRoutes that were found.
+ */
+class Trip {
+    private final double orgLat;
+    private final double orgLng;
+    private final double dstLat;
+    private final double dstLng;
+    private final String dstName;
+    private final long time;
+    private final List<BusRoute> busRoutes;
+
+    /**
+     * Constructor for a Trip
+     * @param orgLat the origin location's latitude in decimal degrees
+     * @param orgLng the origin location's longitude in decimal degrees
+     * @param dstLat the destination location's latitude in decimal degrees
+     * @param dstLng the destination location's longitude in decimal degrees
+     * @param dstName the name of the destination place
+     * @param time when the trip was searched for, in milliseconds since the epoch
+     * @param busRoutes the BusRoutes found for the trip
+     */
+    Trip(double orgLat, double orgLng, double dstLat, double dstLng, String dstName,
+         long time, List<BusRoute> busRoutes) {
+        this.orgLat = orgLat;
+        this.orgLng = orgLng;
+        this.dstLat = dstLat;
+        this.dstLng = dstLng;
+        this.dstName = dstName;
+        this.time = time;
+        this.busRoutes = busRoutes;
+    }
+
+    /**
+     * getOrgLat() gets the origin location's latitude
+     * @return the latitude in decimal degrees
+     */
+    double getOrgLat() {
+        return orgLat;
+    }
+
+    /**
+     * getOrgLng() gets the origin location's longitude
+     * @return the longitude in decimal degrees
+     */
+    double getOrgLng() {
+        return orgLng;
+    }
+
+    /**
+     * getDstLat() gets the destination location's latitude
+     * @return the latitude in decimal degrees
+     */
+    double getDstLat() {
+        return dstLat;
+    }
+
+    /**
+     * getDstLng() gets the destination location's longitude
+     * @return the longitude in decimal degrees
+     */
+    double getDstLng() {
+        return dstLng;
+    }
+
+    /**
+     * getDstName() gets the name of the destination place
+     * @return the name of the destination
+     */
+    String getDstName() {
+        return dstName;
+    }
+
+    /**
+     * getTime() gets when the trip was searched for
+     * @return the time in milliseconds since the epoch
+     */
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * getBusRoutes() gets the BusRoutes found for the trip
+     * @return a list of BusRoutes sorted in order of which bus needs to be boarded first
+     */
+    List<BusRoute> getBusRoutes() {
+        return busRoutes;
+    }
+}
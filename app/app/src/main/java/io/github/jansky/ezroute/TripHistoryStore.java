@@ -0,0 +1,296 @@
+package io.github.jansky.ezroute;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <b>TripHistoryStore</b> is the local SQLite database of the Trips the user has
+ * searched for, so that recent and predicted trips can be shown as soon as the app
+ * starts, and the BusRoutes of a repeated trip can be shown without waiting for the
+ * server. The BusRoutes are stored in the compact route encoding.
+ *
+ * Trips are indexed by destination (and origin), and by time of day. Only the most
+ * recent maxTrips trips that are younger than maxAgeMillis are kept.
+ */
+class TripHistoryStore extends SQLiteOpenHelper {
+    private static final String TAG = "TripHistoryStore";
+    static final String DATABASE_NAME = "trip_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final int MAX_TRIPS = 20000;
+    static final long MAX_AGE_MS = 180L * 24 * 60 * 60 * 1000;
+    /** how far either side of the current time of day to look for predicted trips */
+    static final int PREDICTION_WINDOW_MINUTES = 60;
+    /** how many of the latest trips to look through for distinct recent destinations */
+    private static final int RECENT_SCAN_LIMIT = 200;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final String TABLE = "trips";
+    private static final String[] TRIP_COLUMNS = {
+            "org_lat", "org_lng", "dst_lat", "dst_lng", "dst_name", "time", "routes"
+    };
+
+    /** the latest trips, with their destination keys; bound to the number of trips */
+    static final String RECENT_TRIPS_QUERY = "SELECT " + columnList(withKey(TRIP_COLUMNS)) + " FROM " + TABLE +
+            " ORDER BY _id DESC LIMIT ?";
+    /**
+     * the latest trip id to each destination in a time of day window, most frequent
+     * first; bound to the window, split in two around midnight, and the number of
+     * destinations. Without INDEXED BY, SQLite prefers scanning trips_destination for
+     * the GROUP BY.
+     */
+    static final String PREDICTED_TRIPS_QUERY = "SELECT MAX(_id) FROM " + TABLE +
+            " INDEXED BY trips_time_of_day WHERE minute_of_day BETWEEN ? AND ? OR minute_of_day >= ? OR minute_of_day <= ?" +
+            " GROUP BY dst_key ORDER BY COUNT(*) DESC, MAX(_id) DESC LIMIT ?";
+    /** the latest trip between two locations; bound to the destination and origin keys */
+    static final String FIND_ROUTES_QUERY = "SELECT " + columnList(TRIP_COLUMNS) + " FROM " + TABLE +
+            " WHERE dst_key = ? AND org_key = ? ORDER BY _id DESC LIMIT 1";
+
+    private final int maxTrips;
+    private final long maxAgeMillis;
+
+    /**
+     * Constructor for the TripHistoryStore of the application
+     * @param context context of the application
+     */
+    TripHistoryStore(Context context) {
+        this(context, DATABASE_NAME, MAX_TRIPS, MAX_AGE_MS);
+    }
+
+    /**
+     * Constructor for a TripHistoryStore with its own retention policy
+     * @param context context of the application
+     * @param name the name of the database file, or null for an in-memory database
+     * @param maxTrips the maximum number of trips to keep
+     * @param maxAgeMillis the maximum age of a trip to keep, in milliseconds
+     */
+    TripHistoryStore(Context context, String name, int maxTrips, long maxAgeMillis) {
+        super(context, name, null, DATABASE_VERSION);
+        this.maxTrips = maxTrips;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "org_key TEXT NOT NULL, " +
+                "dst_key TEXT NOT NULL, " +
+                "org_lat REAL NOT NULL, " +
+                "org_lng REAL NOT NULL, " +
+                "dst_lat REAL NOT NULL, " +
+                "dst_lng REAL NOT NULL, " +
+                "dst_name TEXT, " +
+                "minute_of_day INTEGER NOT NULL, " +
+                "time INTEGER NOT NULL, " +
+                "routes BLOB NOT NULL)");
+        db.execSQL("CREATE INDEX trips_destination ON " + TABLE + " (dst_key, org_key)");
+        db.execSQL("CREATE INDEX trips_time_of_day ON " + TABLE + " (minute_of_day, dst_key)");
+        db.execSQL("CREATE INDEX trips_time ON " + TABLE + " (time)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * record() stores a Trip, then removes the trips that are too old or too many
+     * @param trip the Trip to store
+     */
+    void record(Trip trip) {
+        List<Trip> trips = new ArrayList<>();
+        trips.add(trip);
+        recordAll(trips);
+    }
+
+    /**
+     * recordAll() stores a number of Trips in one transaction, then removes the trips
+     * that are too old or too many
+     * @param trips the Trips to store, oldest first
+     */
+    void recordAll(List<Trip> trips) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            long latest = 0;
+            for (Trip trip : trips) {
+                values.put("org_key", RouteCache.locationKey(trip.getOrgLat(), trip.getOrgLng()));
+                values.put("dst_key", RouteCache.locationKey(trip.getDstLat(), trip.getDstLng()));
+                values.put("org_lat", trip.getOrgLat());
+                values.put("org_lng", trip.getOrgLng());
+                values.put("dst_lat", trip.getDstLat());
+                values.put("dst_lng", trip.getDstLng());
+                values.put("dst_name", trip.getDstName());
+                values.put("minute_of_day", minuteOfDay(trip.getTime()));
+                values.put("time", trip.getTime());
+                values.put("routes", CompactRouteCodec.encode(trip.getBusRoutes()));
+                db.insert(TABLE, null, values);
+                latest = Math.max(latest, trip.getTime());
+            }
+            db.delete(TABLE, "time < ?", new String[]{String.valueOf(latest - maxAgeMillis)});
+            // ids only increase, so this keeps at most maxTrips of the latest trips
+            db.delete(TABLE, "_id <= (SELECT MAX(_id) FROM " + TABLE + ") - ?",
+                    new String[]{String.valueOf(maxTrips)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * getRecentTrips() gets the latest Trip to each of the most recent destinations
+     * @param limit the maximum number of Trips to return
+     * @return the Trips, most recent first
+     */
+    List<Trip> getRecentTrips(int limit) {
+        Cursor cursor = getReadableDatabase().rawQuery(RECENT_TRIPS_QUERY,
+                new String[]{String.valueOf(RECENT_SCAN_LIMIT)});
+        return readDistinctTrips(cursor, limit);
+    }
+
+    /**
+     * getPredictedTrips() guesses which trips the user is about to make, from the
+     * destinations they most often searched for at around the same time of day
+     * @param now the current time in milliseconds since the epoch
+     * @param limit the maximum number of Trips to return
+     * @return the latest Trip to each predicted destination, most likely first
+     */
+    List<Trip> getPredictedTrips(long now, int limit) {
+        int minute = minuteOfDay(now);
+        int from = minute - PREDICTION_WINDOW_MINUTES;
+        int to = minute + PREDICTION_WINDOW_MINUTES;
+        // the window may wrap around midnight, in which case it is split in two
+        String[] args = {
+                String.valueOf(Math.max(from, 0)), String.valueOf(Math.min(to, MINUTES_PER_DAY - 1)),
+                String.valueOf(from < 0 ? from + MINUTES_PER_DAY : MINUTES_PER_DAY),
+                String.valueOf(to >= MINUTES_PER_DAY ? to - MINUTES_PER_DAY : -1),
+                String.valueOf(limit)
+        };
+        Cursor latest = getReadableDatabase().rawQuery(PREDICTED_TRIPS_QUERY, args);
+        List<Trip> trips = new ArrayList<>();
+        try {
+            while (latest.moveToNext()) {
+                Cursor cursor = getReadableDatabase().query(TABLE, TRIP_COLUMNS, "_id = ?",
+                        new String[]{String.valueOf(latest.getLong(0))}, null, null, null);
+                trips.addAll(readTrips(cursor));
+            }
+        } finally {
+            latest.close();
+        }
+        return trips;
+    }
+
+    /**
+     * findRoutes() gets the BusRoutes of the latest trip between two locations
+     * @param orgLat the origin location's latitude in decimal degrees
+     * @param orgLng the origin location's longitude in decimal degrees
+     * @param dstLat the destination location's latitude in decimal degrees
+     * @param dstLng the destination location's longitude in decimal degrees
+     * @return the BusRoutes, or null if there has been no such trip
+     */
+    List<BusRoute> findRoutes(double orgLat, double orgLng, double dstLat, double dstLng) {
+        Cursor cursor = getReadableDatabase().rawQuery(FIND_ROUTES_QUERY,
+                new String[]{RouteCache.locationKey(dstLat, dstLng), RouteCache.locationKey(orgLat, orgLng)});
+        List<Trip> trips = readTrips(cursor);
+        return trips.isEmpty() ? null : trips.get(0).getBusRoutes();
+    }
+
+    /**
+     * getTripCount() gets the number of trips stored
+     * @return the number of trips
+     */
+    long getTripCount() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * minuteOfDay() gets the local time of day
+     * @param time the time in milliseconds since the epoch
+     * @return the number of minutes since midnight
+     */
+    static int minuteOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+    }
+
+    private static String[] withKey(String[] columns) {
+        String[] withKey = new String[columns.length + 1];
+        System.arraycopy(columns, 0, withKey, 0, columns.length);
+        withKey[columns.length] = "dst_key";
+        return withKey;
+    }
+
+    private static String columnList(String[] columns) {
+        StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            if (list.length() > 0)
+                list.append(", ");
+            list.append(column);
+        }
+        return list.toString();
+    }
+
+    private static List<Trip> readDistinctTrips(Cursor cursor, int limit) {
+        List<Trip> trips = new ArrayList<>();
+        Set<String> destinations = new HashSet<>();
+        try {
+            int keyColumn = cursor.getColumnIndexOrThrow("dst_key");
+            while (trips.size() < limit && cursor.moveToNext()) {
+                if (!destinations.add(cursor.getString(keyColumn)))
+                    continue;
+                Trip trip = readTrip(cursor);
+                if (trip != null)
+                    trips.add(trip);
+            }
+        } finally {
+            cursor.close();
+        }
+        return trips;
+    }
+
+    private static List<Trip> readTrips(Cursor cursor) {
+        List<Trip> trips = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                Trip trip = readTrip(cursor);
+                if (trip != null)
+                    trips.add(trip);
+            }
+        } finally {
+            cursor.close();
+        }
+        return trips;
+    }
+
+    private static Trip readTrip(Cursor cursor) {
+        try {
+            return new Trip(cursor.getDouble(0), cursor.getDouble(1), cursor.getDouble(2),
+                    cursor.getDouble(3), cursor.getString(4), cursor.getLong(5),
+                    CompactRouteCodec.decode(cursor.getBlob(6)));
+        } catch (IOException e) {
+            Log.e(TAG, "skipping unreadable trip: " + e.toString());
+            return null;
+        }
+    }
+}
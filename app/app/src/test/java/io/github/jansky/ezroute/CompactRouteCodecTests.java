@@ -0,0 +1,166 @@
+package io.github.jansky.ezroute;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the compact binary route encoding, using the /findroute responses in
+ * the synthetic-findroute test resources. These are made up to have the shape of
+ * the server's responses, not recorded from it, so their bus stop codes and
+ * descriptions do not match real bus stops.
+ */
+public class CompactRouteCodecTests {
+    static final String[] SYNTHETIC_RESPONSES = {"direct", "one-transfer", "two-transfers", "walking-transfer"};
+
+    @Test
+    public void compact_route_round_trips() throws IOException {
+        List<BusRoute> busRoutes = Arrays.asList(
+                new BusRoute(new Bus(96), new BusStop("Opp Clementi Stn"), new BusStop("Sunset Way"), 7),
+                new BusRoute(new Bus(2), new BusStop("Sunset Way"), new BusStop("Changi Village Ter"), 300));
+
+        assertEquals(busRoutes, CompactRouteCodec.decode(CompactRouteCodec.encode(busRoutes)));
+    }
+
+    @Test
+    public void compact_route_shares_repeated_strings() {
+        BusRoute first = new BusRoute(new Bus(96), new BusStop("Opp Clementi Stn"), new BusStop("Sunset Way"), 7);
+        BusRoute second = new BusRoute(new Bus(96), new BusStop("Sunset Way"), new BusStop("Opp Clementi Stn"), 7);
+
+        int once = CompactRouteCodec.encode(Arrays.asList(first)).length;
+        int twice = CompactRouteCodec.encode(Arrays.asList(first, second)).length;
+        assertEquals(5, twice - once);
+    }
+
+    @Test
+    public void version_1_compact_route_has_no_paths() throws IOException {
+        byte[] data = {1, 3, 2, '9', '6', 1, 'A', 1, 'B', 1, 0, 1, 2, 7};
+        List<BusRoute> busRoutes = CompactRouteCodec.decode(data);
+
+        assertEquals(Arrays.asList(new BusRoute(new Bus(96), new BusStop("A"), new BusStop("B"), 7)), busRoutes);
+        assertNull(busRoutes.get(0).getEncodedPath());
+    }
+
+    @Test
+    public void each_version_has_its_own_media_type() {
+        assertEquals("application/vnd.ezroute.compact-route", CompactRouteCodec.mediaType(1));
+        assertEquals("application/vnd.ezroute.compact-route;v=2", CompactRouteCodec.mediaType(CompactRouteCodec.VERSION));
+        assertEquals("application/vnd.ezroute.compact-route;v=3",
+                CompactRouteCodec.mediaType(CompactRouteCodec.VERSION_ALTERNATIVES));
+    }
+
+    @Test
+    public void compact_route_matches_json_route() throws Exception {
+        for (String name : SYNTHETIC_RESPONSES) {
+            List<BusRoute> fromJson = RouteParser.parseRoutes(new JSONObject(new String(load(name), "UTF-8")));
+            List<BusRoute> fromCompact = CompactRouteCodec.decode(CompactRouteCodec.encode(fromJson));
+            assertEquals(name, fromJson, fromCompact);
+            for (int i = 0; i < fromJson.size(); i++) {
+                assertNotNull(fromJson.get(i).getEncodedPath());
+                assertEquals(name, fromJson.get(i).getEncodedPath(), fromCompact.get(i).getEncodedPath());
+            }
+        }
+    }
+
+    @Test
+    public void walking_transfer_is_a_walking_bus_route() throws Exception {
+        List<BusRoute> fromJson = RouteParser.parseRoutes(
+                new JSONObject(new String(load("walking-transfer"), "UTF-8")));
+
+        assertEquals(3, fromJson.size());
+        assertFalse(fromJson.get(0).isWalking());
+        assertTrue(fromJson.get(1).isWalking());
+        assertFalse(fromJson.get(2).isWalking());
+        assertEquals(fromJson.get(0).getDstBusStop(), fromJson.get(1).getOrgBusStop());
+        assertEquals(fromJson.get(1).getDstBusStop(), fromJson.get(2).getOrgBusStop());
+        assertEquals(2, fromJson.get(1).getNumStops());
+
+        List<BusRoute> fromCompact = CompactRouteCodec.decode(CompactRouteCodec.encode(fromJson));
+        assertTrue(fromCompact.get(1).isWalking());
+        assertEquals(Bus.WALKING_SERVICE_NO, fromCompact.get(1).getBus().getServiceNo());
+    }
+
+    @Test
+    public void compact_route_is_a_tenth_of_the_size_of_json() throws Exception {
+        for (String name : SYNTHETIC_RESPONSES) {
+            byte[] json = load(name);
+            byte[] compact = CompactRouteCodec.encode(
+                    RouteParser.parseRoutes(new JSONObject(new String(json, "UTF-8"))));
+            assertTrue(name + ": " + compact.length + " B", compact.length * 10 < json.length);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated_compact_route_is_rejected() throws IOException {
+        byte[] data = CompactRouteCodec.encode(Arrays.asList(
+                new BusRoute(new Bus(151), new BusStop("Blk 352"), new BusStop("Macritchie Rsvr"), 18)));
+        CompactRouteCodec.decode(Arrays.copyOf(data, data.length - 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknown_version_is_rejected() throws IOException {
+        CompactRouteCodec.decode(new byte[]{(byte) (CompactRouteCodec.VERSION + 1), 0, 0});
+    }
+
+    @Test
+    public void alternatives_share_strings_and_keep_travel_times() throws IOException {
+        List<RouteAlternative> alternatives = Arrays.asList(
+                new RouteAlternative(Arrays.asList(
+                        new BusRoute(new Bus(96), new BusStop("A"), new BusStop("B"), 2)), 30),
+                new RouteAlternative(Arrays.asList(
+                        new BusRoute(new Bus(2), new BusStop("B"), new BusStop("A"), 2)), 41));
+        byte[] expected = {3, 4, 2, '9', '6', 1, 'A', 1, 'B', 1, '2',
+                2, 30, 1, 0, 1, 2, 2, 0, 41, 1, 3, 2, 1, 2, 0};
+
+        assertArrayEquals(expected, CompactRouteCodec.encodeAlternatives(alternatives));
+        assertEquals(alternatives, CompactRouteCodec.decodeAlternatives(expected));
+    }
+
+    @Test
+    public void single_route_is_one_alternative() throws IOException {
+        List<BusRoute> busRoutes = Arrays.asList(
+                new BusRoute(new Bus(96), new BusStop("Opp Clementi Stn"), new BusStop("Sunset Way"), 7));
+        List<RouteAlternative> alternatives = CompactRouteCodec.decodeAlternatives(CompactRouteCodec.encode(busRoutes));
+
+        assertEquals(1, alternatives.size());
+        assertEquals(busRoutes, alternatives.get(0).getBusRoutes());
+        assertEquals(RouteAlternative.UNKNOWN_TRAVEL_TIME, alternatives.get(0).getTravelTime());
+    }
+
+    @Test
+    public void json_alternatives_match_compact_alternatives() throws Exception {
+        JSONArray routes = new JSONArray();
+        for (int i = 0; i < SYNTHETIC_RESPONSES.length; i++) {
+            JSONObject route = new JSONObject(new String(load(SYNTHETIC_RESPONSES[i]), "UTF-8"))
+                    .getJSONObject("route");
+            route.put("travelTime", 20.4 + 10 * i);
+            routes.put(route);
+        }
+        JSONObject response = new JSONObject().put("error", "none").put("routes", routes).put("complete", true);
+
+        List<RouteAlternative> fromJson = RouteParser.parseAlternatives(response);
+        assertEquals(SYNTHETIC_RESPONSES.length, fromJson.size());
+        assertEquals(20, fromJson.get(0).getTravelTime());
+        assertEquals(40, fromJson.get(2).getTravelTime());
+        assertEquals(fromJson, CompactRouteCodec.decodeAlternatives(CompactRouteCodec.encodeAlternatives(fromJson)));
+    }
+
+    static byte[] load(String name) throws IOException {
+        InputStream in = CompactRouteCodecTests.class.getResourceAsStream("/synthetic-findroute/" + name + ".json");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.jansky.ezroute;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for simplifying and encoding the paths of BusRoutes on the map
+ */
+public class PolylineSimplifierTests {
+    private static final double ORG_LAT = 1.307873;
+    private static final double ORG_LNG = 103.772014;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void straight_line_keeps_only_end_points() {
+        double[] lats = new double[50];
+        double[] lngs = new double[50];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = ORG_LAT + i * 0.001;
+            lngs[i] = ORG_LNG + i * 0.002;
+        }
+
+        assertArrayEquals(new int[]{0, 49}, PolylineSimplifier.simplify(lats, lngs, 1));
+    }
+
+    @Test
+    public void simplified_path_is_within_tolerance() {
+        double[][] path = randomWalk(2000, 42);
+        double[] tolerances = {5, 20, 100, 500};
+        int previousCount = Integer.MAX_VALUE;
+        for (double tolerance : tolerances) {
+            int[] indices = PolylineSimplifier.simplify(path[0], path[1], tolerance);
+
+            assertEquals(0, indices[0]);
+            assertEquals(path[0].length - 1, indices[indices.length - 1]);
+            assertTrue(PolylineSimplifier.maxError(path[0], path[1], indices) <= tolerance);
+            assertTrue(indices.length < previousCount);
+            previousCount = indices.length;
+        }
+    }
+
+    @Test
+    public void short_paths_are_unchanged() {
+        assertArrayEquals(new int[0], PolylineSimplifier.simplify(new double[0], new double[0], 10));
+        assertArrayEquals(new int[]{0, 1},
+                PolylineSimplifier.simplify(new double[]{ORG_LAT, ORG_LAT}, new double[]{ORG_LNG, ORG_LNG}, 10));
+    }
+
+    @Test
+    public void polyline_matches_google_example() {
+        double[] lats = {38.5, 40.7, 43.252};
+        double[] lngs = {-120.2, -120.95, -126.453};
+        String encoded = PolylineCodec.encode(lats, lngs);
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoded);
+
+        double[][] decoded = PolylineCodec.decode(encoded);
+        assertArrayEquals(lats, decoded[0], DELTA);
+        assertArrayEquals(lngs, decoded[1], DELTA);
+    }
+
+    @Test
+    public void polyline_round_trips_to_a_metre() {
+        double[][] path = randomWalk(500, 7);
+        double[][] decoded = PolylineCodec.decode(PolylineCodec.encode(path[0], path[1]));
+        assertArrayEquals(path[0], decoded[0], 0.5e-5);
+        assertArrayEquals(path[1], decoded[1], 0.5e-5);
+    }
+
+    @Test
+    public void geometry_levels_are_bounded_and_within_tolerance() {
+        double[][] path = randomWalk(5000, 3232);
+        RouteGeometry geometry = new RouteGeometry(path[0], path[1]);
+
+        int previousCount = 0;
+        for (int level = 0; level < RouteGeometry.ZOOM_LEVELS.length; level++) {
+            double[][] simplified = geometry.getPath(level);
+            int count = geometry.getVertexCount(level);
+            assertEquals(count, simplified[0].length);
+            assertTrue(count <= RouteGeometry.MAX_VERTICES);
+            assertTrue(count >= previousCount);
+            previousCount = count;
+        }
+
+        // the most zoomed out level has few enough vertices to meet the tolerance
+        double[][] coarse = randomWalk(40, 1);
+        RouteGeometry coarseGeometry = new RouteGeometry(coarse[0], coarse[1]);
+        double tolerance = RouteGeometry.TOLERANCE_PIXELS *
+                PolylineSimplifier.metersPerPixel(RouteGeometry.ZOOM_LEVELS[0], coarse[0][0]);
+        int[] indices = PolylineSimplifier.simplify(coarse[0], coarse[1], tolerance);
+        assertEquals(indices.length, coarseGeometry.getVertexCount(0));
+        assertTrue(PolylineSimplifier.maxError(coarse[0], coarse[1], indices) <= tolerance);
+    }
+
+    @Test
+    public void level_follows_camera_zoom() {
+        assertEquals(0, RouteGeometry.levelFor(3f));
+        assertEquals(0, RouteGeometry.levelFor(10f));
+        assertEquals(1, RouteGeometry.levelFor(10.1f));
+        assertEquals(1, RouteGeometry.levelFor(12f));
+        assertEquals(2, RouteGeometry.levelFor(13.9f));
+        assertEquals(RouteGeometry.ZOOM_LEVELS.length - 1, RouteGeometry.levelFor(21f));
+
+        int maxZoom = RouteGeometry.ZOOM_LEVELS[RouteGeometry.ZOOM_LEVELS.length - 1];
+        for (int tenths = 30; tenths <= maxZoom * 10; tenths++) {
+            float zoom = tenths / 10f;
+            int level = RouteGeometry.levelFor(zoom);
+            // the level is simplified to TOLERANCE_PIXELS at its own zoom level, and every
+            // zoom level in doubles the distances on screen
+            double errorPixels = RouteGeometry.TOLERANCE_PIXELS *
+                    Math.pow(2, zoom - RouteGeometry.ZOOM_LEVELS[level]);
+            assertTrue("zoom " + zoom, errorPixels <= RouteGeometry.TOLERANCE_PIXELS + DELTA);
+        }
+    }
+
+    /**
+     * randomWalk() creates a wiggly path of stops roughly 300 metres apart
+     * @return two arrays, the latitudes and the longitudes of the path
+     */
+    private static double[][] randomWalk(int n, long seed) {
+        Random random = new Random(seed);
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        double heading = 0;
+        lats[0] = ORG_LAT;
+        lngs[0] = ORG_LNG;
+        for (int i = 1; i < n; i++) {
+            heading += random.nextGaussian() * 0.5;
+            lats[i] = lats[i - 1] + Math.sin(heading) * 0.0027;
+            lngs[i] = lngs[i - 1] + Math.cos(heading) * 0.0027;
+        }
+        return new double[][]{lats, lngs};
+    }
+}
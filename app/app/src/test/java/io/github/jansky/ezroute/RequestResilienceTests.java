@@ -0,0 +1,261 @@
+package io.github.jansky.ezroute;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for hedged requests, the circuit breaker and the route cache. Requests are
+ * sent to a local stub server that can inject delays and failures.
+ */
+public class RequestResilienceTests {
+    private static final String BUS_STOP_1 = "some bus stop";
+    private static final String BUS_STOP_2 = "another bus stop";
+
+    private HttpServer server;
+    private ScheduledExecutorService executor;
+    private final AtomicInteger hits = new AtomicInteger();
+    // delay in milliseconds of each request by its number, starting from 0
+    private final Map<Integer, Long> delays = new ConcurrentHashMap<>();
+    private volatile int statusCode = HttpURLConnection.HTTP_OK;
+
+    @Before
+    public void start_stub_server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/findroute", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Long delay = delays.get(hits.getAndIncrement());
+                try {
+                    if (delay != null)
+                        Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(statusCode, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        executor = Executors.newScheduledThreadPool(4);
+    }
+
+    @After
+    public void stop_stub_server() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void hedge_wins_when_first_request_stalls() throws Exception {
+        delays.put(0, 5000L);
+        LatencyTracker tracker = new LatencyTracker(10, 100);
+
+        long start = System.nanoTime();
+        AtomicReference<Object> result = execute(newRequest(tracker, new CircuitBreaker(3, 1000)));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        assertEquals("ok", result.get());
+        assertEquals(2, hits.get());
+        assertTrue("took " + elapsed + " ms", elapsed < 2000);
+    }
+
+    @Test
+    public void no_hedge_when_first_request_is_fast() throws Exception {
+        HedgedRequest<String> request = newRequest(new LatencyTracker(10, 300),
+                new CircuitBreaker(3, 1000));
+
+        AtomicReference<Object> result = execute(request);
+        Thread.sleep(500);
+
+        assertEquals("ok", result.get());
+        assertEquals(1, request.getAttempts());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void failed_request_is_hedged_immediately() throws Exception {
+        statusCode = HttpURLConnection.HTTP_INTERNAL_ERROR;
+        HedgedRequest<String> request = newRequest(new LatencyTracker(10, 5000),
+                new CircuitBreaker(3, 1000));
+
+        long start = System.nanoTime();
+        AtomicReference<Object> result = execute(request);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(result.get() instanceof Exception);
+        assertEquals(2, hits.get());
+        assertTrue("took " + elapsed + " ms", elapsed < 2000);
+    }
+
+    @Test
+    public void circuit_opens_after_consecutive_failures() throws Exception {
+        statusCode = HttpURLConnection.HTTP_INTERNAL_ERROR;
+        LatencyTracker tracker = new LatencyTracker(10, 100);
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+
+        for (int i = 0; i < 3; i++)
+            execute(newRequest(tracker, breaker));
+        assertTrue(breaker.isOpen());
+        int hitsWhenOpened = hits.get();
+
+        AtomicReference<Object> result = execute(newRequest(tracker, breaker));
+        assertTrue(result.get() instanceof IllegalStateException);
+        assertEquals(hitsWhenOpened, hits.get());
+    }
+
+    @Test
+    public void circuit_closes_after_successful_trial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(150);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void latency_tracker_reports_p95() {
+        LatencyTracker tracker = new LatencyTracker(100, 1234);
+        assertEquals(1234, tracker.getP95());
+
+        for (int i = 1; i <= 100; i++)
+            tracker.record(i);
+        assertEquals(95, tracker.getP95());
+
+        // the window only keeps the most recent latencies
+        for (int i = 0; i < 100; i++)
+            tracker.record(10);
+        assertEquals(10, tracker.getP95());
+    }
+
+    @Test
+    public void route_cache_keeps_recent_pairs() {
+        RouteCache cache = new RouteCache(2);
+        List<BusRoute> busRoutes = Collections.singletonList(new BusRoute(new Bus(11),
+                new BusStop(BUS_STOP_1), new BusStop(BUS_STOP_2), 3));
+
+        String key = RouteCache.key(1.307873, 103.772014, 1.360216, 103.989691);
+        cache.put(key, busRoutes);
+        // locations a few metres apart share the same cached routes
+        assertEquals(busRoutes, cache.get(RouteCache.key(1.30790, 103.77199, 1.36020, 103.98970)));
+
+        cache.put(RouteCache.key(1, 103, 1.1, 103.1), busRoutes);
+        cache.put(RouteCache.key(1.2, 103.2, 1.3, 103.3), busRoutes);
+        assertNull(cache.get(key));
+    }
+
+    private HedgedRequest<String> newRequest(LatencyTracker tracker, CircuitBreaker breaker) {
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/findroute";
+        HedgedRequest.CallFactory<String> callFactory = new HedgedRequest.CallFactory<String>() {
+            @Override
+            public HedgedRequest.Call start(final HedgedRequest.Listener<String> listener) {
+                final Future<?> future = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            listener.onResponse(get(url));
+                        } catch (Exception e) {
+                            listener.onFailure(e);
+                        }
+                    }
+                });
+                return new HedgedRequest.Call() {
+                    @Override
+                    public void cancel() {
+                        future.cancel(true);
+                    }
+                };
+            }
+        };
+        HedgedRequest.Scheduler scheduler = new HedgedRequest.Scheduler() {
+            private final Map<Runnable, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                tasks.put(task, executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                ScheduledFuture<?> future = tasks.remove(task);
+                if (future != null)
+                    future.cancel(false);
+            }
+        };
+        return new HedgedRequest<>(callFactory, scheduler, tracker, breaker);
+    }
+
+    /**
+     * execute() runs the request and waits for its result
+     * @return the response, or the exception if the request failed
+     */
+    private AtomicReference<Object> execute(HedgedRequest<String> request) throws InterruptedException {
+        final AtomicReference<Object> result = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        request.execute(new HedgedRequest.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                result.set(response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception error) {
+                result.set(error);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static String get(String url) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("GET");
+        if (con.getResponseCode() != HttpURLConnection.HTTP_OK)
+            throw new IOException("Received response code of " + con.getResponseCode());
+        InputStream in = con.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            body.write(buffer, 0, read);
+        in.close();
+        return body.toString("UTF-8");
+    }
+}
@@ -0,0 +1,315 @@
+package io.github.jansky.ezroute;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the RequestScheduler. Requests are sent to a local stub server through a
+ * pool of four network threads, like the shared Volley RequestQueue.
+ */
+public class RequestSchedulerTests {
+    private static final int NETWORK_THREADS = 4;
+    private static final long FAST_REQUEST_MS = 20;
+    private static final long TIMEOUT_MS = 10000;
+
+    private HttpServer server;
+    private ExecutorService network;
+    private ScheduledExecutorService timer;
+    // the delay, the gate that holds requests until it is opened, the number of requests
+    // in flight and the most in flight at once, by path
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+
+    @Before
+    public void start_stub_server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        for (String path : new String[]{"/findroute", "/prefetch", "/sync"}) {
+            inFlight.put(path, new AtomicInteger());
+            maxInFlight.put(path, new AtomicInteger());
+            delays.put(path, FAST_REQUEST_MS);
+            server.createContext(path, new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    String path = exchange.getHttpContext().getPath();
+                    int current = inFlight.get(path).incrementAndGet();
+                    synchronized (maxInFlight) {
+                        if (current > maxInFlight.get(path).get())
+                            maxInFlight.get(path).set(current);
+                    }
+                    try {
+                        CountDownLatch gate = gates.get(path);
+                        if (gate != null)
+                            gate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        else
+                            Thread.sleep(delays.get(path));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.get(path).decrementAndGet();
+                    }
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+                    exchange.close();
+                }
+            });
+        }
+        server.start();
+        network = Executors.newFixedThreadPool(NETWORK_THREADS);
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void stop_stub_server() {
+        for (CountDownLatch gate : gates.values())
+            gate.countDown();
+        server.stop(0);
+        network.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void interactive_requests_are_not_delayed_by_saturated_background() throws Exception {
+        // without the scheduler, the route search waits for a network thread
+        CountDownLatch unscheduledGate = new CountDownLatch(1);
+        gates.put("/sync", unscheduledGate);
+        List<HttpJob> backlog = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            backlog.add(new HttpJob("/sync"));
+            backlog.get(i).start(null);
+        }
+        awaitInFlight("/sync", NETWORK_THREADS);
+        HttpJob unscheduled = new HttpJob("/findroute");
+        unscheduled.start(null);
+        assertEquals(1, unscheduled.started.getCount());
+        unscheduledGate.countDown();
+        unscheduled.await();
+        for (HttpJob job : backlog)
+            job.await();
+
+        // with it, the route search finishes while the background work is still held at the server
+        CountDownLatch scheduledGate = new CountDownLatch(1);
+        gates.put("/sync", scheduledGate);
+        gates.put("/prefetch", scheduledGate);
+        RequestScheduler scheduler = newScheduler(5000, 1000);
+        List<HttpJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            jobs.add(submit(scheduler, RequestScheduler.Priority.BACKGROUND, "/sync"));
+            jobs.add(submit(scheduler, RequestScheduler.Priority.PREFETCH, "/prefetch"));
+        }
+        awaitInFlight("/sync", RequestScheduler.Priority.BACKGROUND.getMaxInFlight());
+        awaitInFlight("/prefetch", RequestScheduler.Priority.PREFETCH.getMaxInFlight());
+        submit(scheduler, RequestScheduler.Priority.INTERACTIVE, "/findroute").await();
+        assertEquals(RequestScheduler.Priority.BACKGROUND.getMaxInFlight(), inFlight.get("/sync").get());
+        assertEquals(RequestScheduler.Priority.PREFETCH.getMaxInFlight(), inFlight.get("/prefetch").get());
+
+        scheduledGate.countDown();
+        for (HttpJob job : jobs)
+            job.await();
+        assertEquals(0, scheduler.getDropped(RequestScheduler.Priority.BACKGROUND));
+    }
+
+    @Test
+    public void classes_respect_their_concurrency_limits() throws Exception {
+        delays.put("/prefetch", 100L);
+        delays.put("/sync", 100L);
+        RequestScheduler scheduler = newScheduler(5000, 1000);
+
+        List<HttpJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(submit(scheduler, RequestScheduler.Priority.PREFETCH, "/prefetch"));
+            jobs.add(submit(scheduler, RequestScheduler.Priority.BACKGROUND, "/sync"));
+        }
+        for (HttpJob job : jobs)
+            job.await();
+
+        assertEquals(RequestScheduler.Priority.PREFETCH.getMaxInFlight(), maxInFlight.get("/prefetch").get());
+        assertEquals(RequestScheduler.Priority.BACKGROUND.getMaxInFlight(), maxInFlight.get("/sync").get());
+        assertTrue(RequestScheduler.Priority.PREFETCH.getMaxInFlight() +
+                RequestScheduler.Priority.BACKGROUND.getMaxInFlight() < NETWORK_THREADS);
+        for (RequestScheduler.Priority priority : RequestScheduler.Priority.values())
+            assertEquals(0, scheduler.getInFlight(priority));
+    }
+
+    @Test
+    public void background_waits_for_interactive_requests() throws Exception {
+        delays.put("/findroute", 300L);
+        RequestScheduler scheduler = newScheduler(5000, 1000);
+
+        HttpJob interactive = submit(scheduler, RequestScheduler.Priority.INTERACTIVE, "/findroute");
+        HttpJob background = submit(scheduler, RequestScheduler.Priority.BACKGROUND, "/sync");
+        HttpJob prefetch = submit(scheduler, RequestScheduler.Priority.PREFETCH, "/prefetch");
+        assertTrue(scheduler.isBackpressured());
+
+        interactive.await();
+        background.await();
+        prefetch.await();
+        // prefetching is only slowed down, but background sync waits for the route search
+        assertTrue(prefetch.startedNanos < interactive.finishedNanos);
+        assertTrue(background.startedNanos >= interactive.finishedNanos);
+    }
+
+    @Test
+    public void slow_interactive_requests_defer_background_for_cool_down() throws Exception {
+        delays.put("/findroute", 150L);
+        RequestScheduler scheduler = newScheduler(50, 400);
+
+        submit(scheduler, RequestScheduler.Priority.INTERACTIVE, "/findroute").await();
+        assertTrue(scheduler.isBackpressured());
+
+        HttpJob background = submit(scheduler, RequestScheduler.Priority.BACKGROUND, "/sync");
+        Thread.sleep(150);
+        assertEquals(1, background.started.getCount());
+        assertEquals(1, scheduler.getPending(RequestScheduler.Priority.BACKGROUND));
+
+        // the deferred request starts by itself once the cool down has passed
+        background.await();
+        assertFalse(scheduler.isBackpressured());
+    }
+
+    @Test
+    public void oldest_pending_work_is_dropped_when_queue_is_full() throws Exception {
+        delays.put("/findroute", 300L);
+        RequestScheduler scheduler = newScheduler(5000, 1000);
+        int capacity = RequestScheduler.Priority.BACKGROUND.getMaxPending();
+
+        HttpJob interactive = submit(scheduler, RequestScheduler.Priority.INTERACTIVE, "/findroute");
+        List<HttpJob> jobs = new ArrayList<>();
+        for (int i = 0; i < capacity + 3; i++)
+            jobs.add(submit(scheduler, RequestScheduler.Priority.BACKGROUND, "/sync"));
+
+        assertEquals(3, scheduler.getDropped(RequestScheduler.Priority.BACKGROUND));
+        assertEquals(capacity, scheduler.getPending(RequestScheduler.Priority.BACKGROUND));
+        for (int i = 0; i < 3; i++)
+            assertTrue(jobs.get(i).dropped);
+
+        interactive.await();
+        for (int i = 3; i < jobs.size(); i++)
+            jobs.get(i).await();
+    }
+
+    private RequestScheduler newScheduler(long slowMillis, long coolDownMillis) {
+        return new RequestScheduler(new HedgedRequest.Scheduler() {
+            private final Map<Runnable, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                tasks.put(task, timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                ScheduledFuture<?> future = tasks.remove(task);
+                if (future != null)
+                    future.cancel(false);
+            }
+        }, slowMillis, coolDownMillis);
+    }
+
+    /**
+     * awaitInFlight() waits until the stub server is handling a number of requests to a path
+     */
+    private void awaitInFlight(String path, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (inFlight.get(path).get() < count) {
+            assertTrue(count + " requests to " + path + " in flight", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private HttpJob submit(RequestScheduler scheduler, RequestScheduler.Priority priority, String path) {
+        HttpJob job = new HttpJob(path);
+        scheduler.submit(priority, job);
+        return job;
+    }
+
+    /**
+     * <b>HttpJob</b> sends a GET request to the stub server on one of the network threads
+     */
+    private class HttpJob implements RequestScheduler.Job {
+        final String url;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile long startedNanos;
+        volatile long finishedNanos;
+        volatile boolean dropped;
+        // an assertion on the network thread would be lost, so the error is checked in await()
+        volatile IOException error;
+
+        HttpJob(String path) {
+            url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        }
+
+        @Override
+        public void start(final Runnable done) {
+            network.execute(new Runnable() {
+                @Override
+                public void run() {
+                    startedNanos = System.nanoTime();
+                    started.countDown();
+                    try {
+                        get(url);
+                    } catch (IOException e) {
+                        error = e;
+                    } finally {
+                        finishedNanos = System.nanoTime();
+                        if (done != null)
+                            done.run();
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onDropped() {
+            dropped = true;
+        }
+
+        /**
+         * await() waits for the request to finish, and fails the test if it failed
+         */
+        void await() throws InterruptedException {
+            assertTrue(url + " finished", finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            if (error != null)
+                throw new AssertionError(url + " failed: " + error);
+        }
+    }
+
+    private static void get(String url) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("GET");
+        if (con.getResponseCode() != HttpURLConnection.HTTP_OK)
+            throw new IOException("Received response code of " + con.getResponseCode());
+        InputStream in = con.getInputStream();
+        while (in.read() != -1) {
+            // drain the response
+        }
+        in.close();
+    }
+}
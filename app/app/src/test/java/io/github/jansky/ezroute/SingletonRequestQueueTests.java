@@ -0,0 +1,222 @@
+package io.github.jansky.ezroute;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for requests sent through Singleton.addToRequestQueue(), from the RequestScheduler
+ * through the shared Volley RequestQueue to a local stub server and back. Route searches
+ * are held at the server until the test lets them through, so that lower priority
+ * requests are held back by the scheduler in the meantime.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SingletonRequestQueueTests {
+    private static final long TIMEOUT_MS = 10000;
+
+    private HttpServer server;
+    private final CountDownLatch routeGate = new CountDownLatch(1);
+    private final AtomicInteger syncRequests = new AtomicInteger();
+    private RequestScheduler scheduler;
+    private Singleton singleton;
+
+    @Before
+    public void start_stub_server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/findroute", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    routeGate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "route");
+            }
+        });
+        server.createContext("/sync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                syncRequests.incrementAndGet();
+                respond(exchange, "synced");
+            }
+        });
+        server.start();
+        singleton = Singleton.getInstance(ApplicationProvider.getApplicationContext());
+        scheduler = singleton.getRequestScheduler();
+    }
+
+    @After
+    public void stop_stub_server() throws Exception {
+        routeGate.countDown();
+        runMainLooperUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return isIdle();
+            }
+        });
+        server.stop(0);
+    }
+
+    @Test
+    public void finished_requests_make_room_in_the_scheduler() throws Exception {
+        final List<String> responses = new CopyOnWriteArrayList<>();
+        List<VolleyError> errors = new CopyOnWriteArrayList<>();
+        singleton.addToRequestQueue(request("/findroute", responses, errors), RequestScheduler.Priority.INTERACTIVE);
+        assertEquals(1, scheduler.getInFlight(RequestScheduler.Priority.INTERACTIVE));
+        assertTrue(scheduler.isBackpressured());
+
+        routeGate.countDown();
+        runMainLooperUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return !responses.isEmpty() && isIdle();
+            }
+        });
+        assertEquals("route", responses.get(0));
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void requests_cancelled_while_pending_are_never_sent() throws Exception {
+        List<String> responses = new CopyOnWriteArrayList<>();
+        List<VolleyError> errors = new CopyOnWriteArrayList<>();
+        singleton.addToRequestQueue(request("/findroute", new CopyOnWriteArrayList<String>(),
+                new CopyOnWriteArrayList<VolleyError>()), RequestScheduler.Priority.INTERACTIVE);
+        Request<String> sync = request("/sync", responses, errors);
+        singleton.addToRequestQueue(sync, RequestScheduler.Priority.BACKGROUND);
+        assertEquals(1, scheduler.getPending(RequestScheduler.Priority.BACKGROUND));
+
+        sync.cancel();
+        routeGate.countDown();
+        // the cancelled request is still handed to the RequestQueue, which discards it and
+        // tells the scheduler that it has finished
+        runMainLooperUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return isIdle();
+            }
+        });
+        assertEquals(0, syncRequests.get());
+        assertTrue(responses.isEmpty());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void dropped_requests_receive_an_error() throws Exception {
+        singleton.addToRequestQueue(request("/findroute", new CopyOnWriteArrayList<String>(),
+                new CopyOnWriteArrayList<VolleyError>()), RequestScheduler.Priority.INTERACTIVE);
+        int dropped = scheduler.getDropped(RequestScheduler.Priority.BACKGROUND);
+        final List<VolleyError> oldestErrors = new CopyOnWriteArrayList<>();
+        List<Request<String>> requests = new ArrayList<>();
+        for (int i = 0; i <= RequestScheduler.Priority.BACKGROUND.getMaxPending(); i++) {
+            requests.add(request("/sync", new CopyOnWriteArrayList<String>(),
+                    i == 0 ? oldestErrors : new CopyOnWriteArrayList<VolleyError>()));
+            singleton.addToRequestQueue(requests.get(i), RequestScheduler.Priority.BACKGROUND);
+        }
+        assertEquals(dropped + 1, scheduler.getDropped(RequestScheduler.Priority.BACKGROUND));
+
+        runMainLooperUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return !oldestErrors.isEmpty();
+            }
+        });
+        assertEquals("Request dropped by the RequestScheduler", oldestErrors.get(0).getMessage());
+
+        for (Request<String> request : requests)
+            request.cancel();
+        routeGate.countDown();
+        runMainLooperUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return isIdle();
+            }
+        });
+        assertEquals(1, oldestErrors.size());
+        assertEquals(0, syncRequests.get());
+    }
+
+    /**
+     * isIdle() checks whether the scheduler has no requests pending or in flight
+     */
+    private boolean isIdle() {
+        for (RequestScheduler.Priority priority : RequestScheduler.Priority.values()) {
+            if (scheduler.getPending(priority) > 0 || scheduler.getInFlight(priority) > 0)
+                return false;
+        }
+        return true;
+    }
+
+    private Request<String> request(String path, final List<String> responses, final List<VolleyError> errors) {
+        StringRequest request = new StringRequest(Request.Method.GET,
+                "http://127.0.0.1:" + server.getAddress().getPort() + path,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        responses.add(response);
+                    }
+                }, new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        errors.add(error);
+                    }
+                });
+        request.setShouldCache(false);
+        request.setRetryPolicy(new DefaultRetryPolicy((int) TIMEOUT_MS, 0, 1f));
+        return request;
+    }
+
+    /**
+     * runMainLooperUntil() runs the tasks posted to the main thread, where Volley delivers
+     * responses and the Singleton delivers dropped requests, until the condition holds
+     */
+    private static void runMainLooperUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.call()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(5);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.jansky.ezroute;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the cold start markers
+ */
+public class StartupTracerTests {
+    private static final long PROCESS_START = 100000;
+
+    private final List<String> logged = new ArrayList<>();
+
+    private StartupTracer newTracer() {
+        return new StartupTracer(PROCESS_START, new StartupTracer.Listener() {
+            @Override
+            public void onMark(String marker, long millis) {
+                logged.add(marker + "=" + millis);
+            }
+        }, StartupTracer.FIRST_FRAME, StartupTracer.MAP_READY, StartupTracer.SEARCH_READY);
+    }
+
+    @Test
+    public void markers_are_measured_from_process_start() {
+        StartupTracer tracer = newTracer();
+        tracer.mark(StartupTracer.APPLICATION_CREATED, PROCESS_START + 80);
+        tracer.mark(StartupTracer.ACTIVITY_CREATED, PROCESS_START + 210);
+
+        assertEquals(Long.valueOf(80), tracer.getMillis(StartupTracer.APPLICATION_CREATED));
+        assertEquals(Long.valueOf(210), tracer.getMillis(StartupTracer.ACTIVITY_CREATED));
+        assertNull(tracer.getMillis(StartupTracer.FIRST_FRAME));
+        assertEquals("application_created=80 activity_created=210", tracer.report());
+    }
+
+    @Test
+    public void only_the_first_mark_counts() {
+        StartupTracer tracer = newTracer();
+        tracer.mark(StartupTracer.ACTIVITY_CREATED, PROCESS_START + 210);
+        // e.g. the activity is recreated when the screen is rotated
+        tracer.mark(StartupTracer.ACTIVITY_CREATED, PROCESS_START + 5000);
+
+        assertEquals(Long.valueOf(210), tracer.getMillis(StartupTracer.ACTIVITY_CREATED));
+        assertEquals(1, logged.size());
+    }
+
+    @Test
+    public void interactive_once_every_required_marker_is_reached() {
+        StartupTracer tracer = newTracer();
+        tracer.mark(StartupTracer.FIRST_FRAME, PROCESS_START + 400);
+        tracer.mark(StartupTracer.SEARCH_READY, PROCESS_START + 450);
+        tracer.mark(StartupTracer.HTTP_WARM, PROCESS_START + 500);
+        assertNull(tracer.getMillis(StartupTracer.INTERACTIVE));
+
+        tracer.mark(StartupTracer.MAP_READY, PROCESS_START + 700);
+        assertEquals(Long.valueOf(700), tracer.getMillis(StartupTracer.INTERACTIVE));
+        assertEquals("interactive=700", logged.get(logged.size() - 1));
+
+        tracer.mark(StartupTracer.LOCAL_DATA_WARM, PROCESS_START + 900);
+        assertEquals(Long.valueOf(700), tracer.getMillis(StartupTracer.INTERACTIVE));
+    }
+}
@@ -0,0 +1,213 @@
+package io.github.jansky.ezroute;
+
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the local trip history, run on Robolectric's SQLite with an in-memory database
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TripHistoryStoreTests {
+    private static final double ORG_LAT = 1.307873;
+    private static final double ORG_LNG = 103.772014;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final int LARGE_HISTORY = 30000;
+    private static final int DESTINATIONS = 300;
+    private static final int QUERY_RUNS = 50;
+
+    private static final List<BusRoute> ROUTES = Arrays.asList(
+            new BusRoute(new Bus(96), new BusStop("Opp Clementi Stn"), new BusStop("Sunset Way"), 7,
+                    "_ibG_ucwR_t@_t@"),
+            new BusRoute(new Bus(2), new BusStop("Sunset Way"), new BusStop("Changi Village Ter"), 30));
+
+    private TripHistoryStore store;
+
+    @After
+    public void close() {
+        if (store != null)
+            store.close();
+    }
+
+    @Test
+    public void repeated_trip_routes_are_found() {
+        store = newStore(TripHistoryStore.MAX_TRIPS, TripHistoryStore.MAX_AGE_MS);
+        long now = at(2019, 11, 4, 8, 30);
+        store.record(new Trip(ORG_LAT, ORG_LNG, 1.3000, 103.8000, "Work", now, ROUTES));
+
+        List<BusRoute> found = store.findRoutes(ORG_LAT, ORG_LNG, 1.3002, 103.8001);
+        assertEquals(ROUTES, found);
+        assertEquals(ROUTES.get(0).getEncodedPath(), found.get(0).getEncodedPath());
+        assertNull(store.findRoutes(ORG_LAT, ORG_LNG, 1.3500, 103.8000));
+        assertNull(store.findRoutes(1.3500, 103.8000, 1.3000, 103.8000));
+    }
+
+    @Test
+    public void recent_trips_are_distinct_and_latest_first() {
+        store = newStore(TripHistoryStore.MAX_TRIPS, TripHistoryStore.MAX_AGE_MS);
+        long now = at(2019, 11, 4, 8, 30);
+        store.recordAll(Arrays.asList(
+                trip(1, "Work", now - 3 * DAY_MS),
+                trip(2, "Home", now - 2 * DAY_MS),
+                trip(1, "Work", now - DAY_MS),
+                trip(3, "School", now)));
+
+        List<Trip> recent = store.getRecentTrips(5);
+        assertEquals(3, recent.size());
+        assertEquals("School", recent.get(0).getDstName());
+        assertEquals("Work", recent.get(1).getDstName());
+        assertEquals(now - DAY_MS, recent.get(1).getTime());
+        assertEquals("Home", recent.get(2).getDstName());
+        assertEquals(ROUTES, recent.get(0).getBusRoutes());
+
+        assertEquals(2, store.getRecentTrips(2).size());
+    }
+
+    @Test
+    public void predicted_trips_follow_time_of_day() {
+        store = newStore(TripHistoryStore.MAX_TRIPS, TripHistoryStore.MAX_AGE_MS);
+        List<Trip> trips = new ArrayList<>();
+        for (int day = 1; day <= 20; day++) {
+            trips.add(trip(1, "Work", at(2019, 10, day, 8, 15)));
+            trips.add(trip(2, "Home", at(2019, 10, day, 18, 30)));
+            if (day % 4 == 0)
+                trips.add(trip(3, "Gym", at(2019, 10, day, 7, 45)));
+        }
+        trips.add(trip(4, "Airport", at(2019, 10, 21, 13, 0)));
+        store.recordAll(trips);
+
+        List<Trip> morning = store.getPredictedTrips(at(2019, 10, 22, 8, 0), 3);
+        assertEquals(2, morning.size());
+        assertEquals("Work", morning.get(0).getDstName());
+        assertEquals(at(2019, 10, 20, 8, 15), morning.get(0).getTime());
+        assertEquals("Gym", morning.get(1).getDstName());
+
+        List<Trip> evening = store.getPredictedTrips(at(2019, 10, 22, 19, 0), 3);
+        assertEquals(1, evening.size());
+        assertEquals("Home", evening.get(0).getDstName());
+
+        assertTrue(store.getPredictedTrips(at(2019, 10, 22, 3, 0), 3).isEmpty());
+    }
+
+    @Test
+    public void prediction_window_wraps_around_midnight() {
+        store = newStore(TripHistoryStore.MAX_TRIPS, TripHistoryStore.MAX_AGE_MS);
+        store.recordAll(Arrays.asList(
+                trip(1, "Night Bus", at(2019, 10, 1, 23, 50)),
+                trip(2, "Early Shift", at(2019, 10, 2, 0, 10))));
+
+        List<Trip> beforeMidnight = store.getPredictedTrips(at(2019, 10, 3, 23, 30), 3);
+        assertEquals(2, beforeMidnight.size());
+        List<Trip> afterMidnight = store.getPredictedTrips(at(2019, 10, 4, 0, 30), 3);
+        assertEquals(2, afterMidnight.size());
+    }
+
+    @Test
+    public void old_and_excess_trips_are_pruned() {
+        store = newStore(100, 10 * DAY_MS);
+        long now = at(2019, 11, 4, 8, 30);
+        store.record(trip(1, "Old", now - 11 * DAY_MS));
+        List<Trip> trips = new ArrayList<>();
+        for (int i = 0; i < 150; i++)
+            trips.add(trip(2 + i % 10, "Recent " + i, now - (150 - i) * 60000L));
+        store.recordAll(trips);
+
+        assertEquals(100, store.getTripCount());
+        assertNull(store.findRoutes(ORG_LAT, ORG_LNG, destinationLat(1), destinationLng(1)));
+        assertEquals("Recent 149", store.getRecentTrips(1).get(0).getDstName());
+
+        store.record(trip(1, "Later", now + 20 * DAY_MS));
+        assertEquals(1, store.getTripCount());
+    }
+
+    @Test
+    public void queries_use_indices_with_large_history() {
+        store = newStore(TripHistoryStore.MAX_TRIPS, TripHistoryStore.MAX_AGE_MS);
+        Random random = new Random(42);
+        long start = at(2019, 6, 1, 0, 0);
+        List<Trip> trips = new ArrayList<>(LARGE_HISTORY);
+        for (int i = 0; i < LARGE_HISTORY; i++) {
+            long time = start + i * (150 * DAY_MS / LARGE_HISTORY) + random.nextInt(3600000);
+            trips.add(trip(random.nextInt(DESTINATIONS), null, time));
+        }
+        store.recordAll(trips);
+        assertEquals(TripHistoryStore.MAX_TRIPS, store.getTripCount());
+
+        long now = start + 150 * DAY_MS;
+        for (int i = 0; i < QUERY_RUNS; i++) {
+            assertEquals(3, store.getRecentTrips(3).size());
+            assertEquals(3, store.getPredictedTrips(now + i * 60000L, 3).size());
+            assertNotNull(store.findRoutes(ORG_LAT, ORG_LNG, destinationLat(i), destinationLng(i)));
+        }
+
+        // the latest trips are read backwards along the primary key, without sorting
+        String recent = queryPlan(TripHistoryStore.RECENT_TRIPS_QUERY, "200");
+        assertFalse(recent, recent.contains("TEMP B-TREE"));
+
+        String predicted = queryPlan(TripHistoryStore.PREDICTED_TRIPS_QUERY, "450", "570", "1440", "-1", "3");
+        assertTrue(predicted, predicted.contains("USING COVERING INDEX trips_time_of_day")
+                || predicted.contains("USING INDEX trips_time_of_day"));
+        assertFalse(predicted, predicted.contains("SCAN"));
+
+        String find = queryPlan(TripHistoryStore.FIND_ROUTES_QUERY,
+                RouteCache.locationKey(destinationLat(0), destinationLng(0)), RouteCache.locationKey(ORG_LAT, ORG_LNG));
+        assertTrue(find, find.contains("USING INDEX trips_destination (dst_key=? AND org_key=?)"));
+        assertFalse(find, find.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * queryPlan() explains how SQLite runs a query of the store
+     * @return the details of each step of the plan, one per line
+     */
+    private String queryPlan(String query, String... args) {
+        Cursor cursor = store.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + query, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext())
+                plan.append(cursor.getString(detail)).append('\n');
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static TripHistoryStore newStore(int maxTrips, long maxAgeMillis) {
+        return new TripHistoryStore(ApplicationProvider.getApplicationContext(), null, maxTrips, maxAgeMillis);
+    }
+
+    private static Trip trip(int destination, String name, long time) {
+        return new Trip(ORG_LAT, ORG_LNG, destinationLat(destination), destinationLng(destination),
+                name, time, ROUTES);
+    }
+
+    private static double destinationLat(int destination) {
+        return 1.25 + (destination / 20) * 0.01;
+    }
+
+    private static double destinationLng(int destination) {
+        return 103.65 + (destination % 20) * 0.01;
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.jansky.ezroute;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the payload size and decode time of the JSON and compact /findroute
+ * formats for the synthetic responses. Results are printed to standard output;
+ * nothing is asserted on them, since the timings depend on the machine. Run with
+ * ./gradlew :app:benchmark
+ */
+public class WireFormatBenchmark {
+    private static final int WARM_UP = 500;
+    private static final int ITERATIONS = 5000;
+
+    @Test
+    public void print_size_and_decode_time_of_each_format() throws Exception {
+        System.out.println(String.format(Locale.US, "%-17s %10s %10s %12s %12s",
+                "response", "json B", "compact B", "json us", "compact us"));
+        for (String name : CompactRouteCodecTests.SYNTHETIC_RESPONSES) {
+            final String json = new String(CompactRouteCodecTests.load(name), "UTF-8");
+            final byte[] compact = CompactRouteCodec.encode(RouteParser.parseRoutes(new JSONObject(json)));
+
+            double jsonMicros = time(new Decoder() {
+                @Override
+                public List<BusRoute> decode() throws Exception {
+                    return RouteParser.parseRoutes(new JSONObject(json));
+                }
+            });
+            double compactMicros = time(new Decoder() {
+                @Override
+                public List<BusRoute> decode() throws Exception {
+                    return CompactRouteCodec.decode(compact);
+                }
+            });
+
+            System.out.println(String.format(Locale.US, "%-17s %10d %10d %12.2f %12.2f",
+                    name, json.getBytes("UTF-8").length, compact.length, jsonMicros, compactMicros));
+        }
+    }
+
+    private interface Decoder {
+        List<BusRoute> decode() throws Exception;
+    }
+
+    /**
+     * time() measures the mean time to decode a response
+     * @return the mean decode time in microseconds
+     */
+    private static double time(Decoder decoder) throws Exception {
+        int sink = 0;
+        for (int i = 0; i < WARM_UP; i++)
+            sink += decoder.decode().size();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            sink += decoder.decode().size();
+        long elapsed = System.nanoTime() - start;
+        // use the results so that the decoding is not optimised away
+        if (sink == 0)
+            System.out.println("no routes decoded");
+        return elapsed / 1000.0 / ITERATIONS;
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <b>DumpReader</b> streams the records of one LTA DataMall dataset from a recorded dump.
+ *
+ * DataMall returns datasets in pages of 500 records, fetched with the $skip query parameter.
+ * A dump stores each page exactly as it was returned, in a directory named after the
+ * dataset, with the page's $skip as its file name, e.g. BusRoutes/1500.json. Each page
+ * looks like {"odata.metadata": "...", "value": [ ... ]}.
+ *
+ * Pages are read in $skip order, one record at a time, so only the record being handled
+ * is held in memory however large the dataset is.
+ */
+final class DumpReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PAGE_SUFFIX = ".json";
+
+    /**
+     * <b>RecordHandler</b> receives each record of the dataset in turn
+     */
+    interface RecordHandler {
+        /**
+         * onRecord() handles a single record
+         * @param record the record, as returned by DataMall
+         * @throws IOException if the record cannot be handled
+         * @throws InterruptedException if the pipeline is stopped while the record is handled
+         */
+        void onRecord(JsonObject record) throws IOException, InterruptedException;
+    }
+
+    private final List<File> pages;
+
+    /**
+     * Constructor for a DumpReader
+     * @param dumpDir the directory of the dump
+     * @param dataset the name of the dataset, e.g. "BusStops"
+     * @throws FileNotFoundException if the dump does not contain the dataset
+     */
+    DumpReader(File dumpDir, String dataset) throws FileNotFoundException {
+        File datasetDir = new File(dumpDir, dataset);
+        File[] files = datasetDir.listFiles();
+        if (files == null)
+            throw new FileNotFoundException("No " + dataset + " dataset in " + dumpDir);
+
+        pages = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && pageSkip(file) >= 0)
+                pages.add(file);
+        }
+        Collections.sort(pages, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(pageSkip(a), pageSkip(b));
+            }
+        });
+    }
+
+    /**
+     * getPages() gets the pages of the dataset
+     * @return the page files, in $skip order
+     */
+    List<File> getPages() {
+        return pages;
+    }
+
+    /**
+     * read() streams every record of the dataset to the handler
+     * @param handler the handler to receive the records
+     * @throws IOException if a page cannot be read or is not a DataMall page
+     * @throws InterruptedException if the handler is interrupted
+     */
+    void read(RecordHandler handler) throws IOException, InterruptedException {
+        for (File page : pages) {
+            try (JsonReader reader = new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(new FileInputStream(page)), UTF_8))) {
+                readPage(reader, handler);
+            } catch (JsonParseException | IllegalStateException e) {
+                throw new IOException("Malformed page " + page, e);
+            }
+        }
+    }
+
+    /**
+     * readPage() streams the records in the value array of a single page
+     */
+    private static void readPage(JsonReader reader, RecordHandler handler)
+            throws IOException, InterruptedException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("value") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonElement record = JsonParser.parseReader(reader);
+                if (record.isJsonObject())
+                    handler.onRecord(record.getAsJsonObject());
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * pageSkip() gets the $skip of a page from its file name
+     * @return the $skip, or -1 if the file is not a page
+     */
+    private static long pageSkip(File file) {
+        String name = file.getName();
+        if (!name.endsWith(PAGE_SUFFIX))
+            return -1;
+        try {
+            return Long.parseLong(name.substring(0, name.length() - PAGE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
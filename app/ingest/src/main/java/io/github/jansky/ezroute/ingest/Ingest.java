@@ -0,0 +1,74 @@
+package io.github.jansky.ezroute.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * <b>Ingest</b> is the command-line entry point of the ingestion pipeline. It builds a
+ * routing snapshot from a recorded LTA DataMall dump, fully offline, and reports the
+ * throughput of each stage.
+ *
+ * Usage: ingest &lt;dump directory&gt; &lt;output directory&gt; [--workers N] [--queue-size N]
+ *
+ * The snapshot can then be loaded into the server's database with, for each collection:
+ * mongoimport --db ezroute --collection bussegments --file bussegments.json
+ * followed by "npm run routestops" and "npm run footpaths" in the server, which derive the
+ * bus route descriptions, spoke segments and walking transfers from the loaded collections.
+ */
+public final class Ingest {
+    static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final String USAGE =
+            "Usage: ingest <dump directory> <output directory> [--workers N] [--queue-size N]";
+
+    private Ingest() {
+    }
+
+    public static void main(String[] args) {
+        File dumpDir = null;
+        File outputDir = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queueSize = DEFAULT_QUEUE_SIZE;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--workers"))
+                    workers = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--queue-size"))
+                    queueSize = Integer.parseInt(args[++i]);
+                else if (dumpDir == null)
+                    dumpDir = new File(args[i]);
+                else if (outputDir == null)
+                    outputDir = new File(args[i]);
+                else
+                    throw new IllegalArgumentException(args[i]);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            dumpDir = null;
+        }
+
+        if (dumpDir == null || outputDir == null || workers < 1 || queueSize < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        IngestPipeline pipeline = new IngestPipeline(dumpDir, outputDir, workers, queueSize);
+        long start = System.nanoTime();
+        try {
+            SnapshotWriter snapshot = pipeline.run();
+
+            for (StageStats stage : pipeline.getStages())
+                System.out.println(stage);
+            for (SnapshotWriter.Collection collection : SnapshotWriter.Collection.values())
+                System.out.println(String.format(Locale.US, "Wrote %d documents to %s",
+                        snapshot.getCount(collection), new File(outputDir, collection.getFileName())));
+            System.out.println(String.format(Locale.US, "Finished in %.3f s with %d segment workers",
+                    (System.nanoTime() - start) / 1e9, workers));
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Ingestion failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <b>IngestPipeline</b> turns a recorded LTA DataMall dump into a routing snapshot.
+ *
+ * The pipeline runs as stages connected by bounded queues:
+ * <pre>
+ *   BusStops reader    ----------------------------------------\
+ *   BusServices reader ---------------------------------------- +--> writer
+ *   BusRoutes reader   --routes--> segment workers (N) --------/
+ * </pre>
+ * The readers stream their datasets one record at a time. The BusRoutes reader gathers
+ * the records of each bus service and direction into a route, and the segment workers
+ * build the route's segments in parallel. A single writer appends every document to the
+ * snapshot as it arrives.
+ *
+ * Because the queues are bounded, a fast stage blocks once it is too far ahead of the
+ * stage after it, so memory use depends on the queue capacity and not on the size of the
+ * dump. The only state kept for the whole run is the set of bus services already seen.
+ */
+final class IngestPipeline {
+    static final String BUS_STOPS = "BusStops";
+    static final String BUS_SERVICES = "BusServices";
+    static final String BUS_ROUTES = "BusRoutes";
+
+    /**
+     * The average bus speeds used by the server's LTA import, in km/h
+     */
+    static final double SPEED_NORMAL = 22.0;
+    static final double SPEED_EXPRESS = 30.0;
+
+    /**
+     * Tells a segment worker that there are no more routes
+     */
+    private static final List<JsonObject> END_OF_ROUTES = Collections.emptyList();
+
+    /**
+     * Tells the writer that one of the stages feeding it has finished
+     */
+    private static final Document END_OF_DOCUMENTS = new Document(null, null);
+
+    /**
+     * <b>Document</b> is a document on its way to the writer, with the collection it belongs to
+     */
+    private static final class Document {
+        final SnapshotWriter.Collection collection;
+        final JsonObject document;
+
+        Document(SnapshotWriter.Collection collection, JsonObject document) {
+            this.collection = collection;
+            this.document = document;
+        }
+    }
+
+    /**
+     * <b>Converter</b> converts a DataMall record into a snapshot document
+     */
+    private interface Converter {
+        /**
+         * convert() converts a record
+         * @return the document, or null if the record is invalid
+         */
+        JsonObject convert(JsonObject record);
+    }
+
+    private final File dumpDir;
+    private final File outputDir;
+    private final int workers;
+    private final int queueCapacity;
+    private final RouteSegmenter segmenter = new RouteSegmenter(SPEED_NORMAL, SPEED_EXPRESS);
+
+    private final StageStats busStopsStage = new StageStats(BUS_STOPS);
+    private final StageStats busServicesStage = new StageStats(BUS_SERVICES);
+    private final StageStats busRoutesStage = new StageStats(BUS_ROUTES);
+    private final StageStats segmentStage = new StageStats("segments");
+    private final StageStats writeStage = new StageStats("write");
+
+    /**
+     * Constructor for an IngestPipeline
+     * @param dumpDir the directory of the recorded dump
+     * @param outputDir the directory to write the snapshot to
+     * @param workers the number of segment workers
+     * @param queueCapacity the capacity of each queue between stages
+     */
+    IngestPipeline(File dumpDir, File outputDir, int workers, int queueCapacity) {
+        if (workers < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException("workers and queueCapacity must be at least 1");
+        this.dumpDir = dumpDir;
+        this.outputDir = outputDir;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * getStages() gets the statistics of each stage, in pipeline order
+     * @return the stage statistics
+     */
+    List<StageStats> getStages() {
+        return Arrays.asList(busStopsStage, busServicesStage, busRoutesStage, segmentStage, writeStage);
+    }
+
+    /**
+     * run() runs the pipeline to completion
+     * @return the snapshot writer, committed, for its document counts
+     * @throws IOException if the dump cannot be read or the snapshot cannot be written
+     * @throws InterruptedException if the pipeline is interrupted
+     */
+    SnapshotWriter run() throws IOException, InterruptedException {
+        final DumpReader busStops = new DumpReader(dumpDir, BUS_STOPS);
+        final DumpReader busServices = new DumpReader(dumpDir, BUS_SERVICES);
+        final DumpReader busRoutes = new DumpReader(dumpDir, BUS_ROUTES);
+
+        final BlockingQueue<List<JsonObject>> routes = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Document> documents = new ArrayBlockingQueue<>(queueCapacity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 3);
+        List<Future<Void>> stages = new ArrayList<>();
+
+        try (SnapshotWriter writer = new SnapshotWriter(outputDir)) {
+            stages.add(executor.submit(read(busStops, busStopsStage, documents,
+                    SnapshotWriter.Collection.BUS_STOPS, new Converter() {
+                        @Override
+                        public JsonObject convert(JsonObject record) {
+                            return LtaRecords.busStop(record);
+                        }
+                    })));
+            stages.add(executor.submit(read(busServices, busServicesStage, documents,
+                    SnapshotWriter.Collection.BUS_SERVICES, new Converter() {
+                        @Override
+                        public JsonObject convert(JsonObject record) {
+                            return LtaRecords.busService(record);
+                        }
+                    })));
+            stages.add(executor.submit(readRoutes(busRoutes, routes)));
+            for (int i = 0; i < workers; i++)
+                stages.add(executor.submit(segment(routes, documents)));
+
+            write(writer, documents, 2 + workers);
+
+            for (Future<Void> stage : stages)
+                awaitStage(stage);
+            writer.commit();
+            return writer;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * read() creates a stage that converts each record of a dataset into a document
+     */
+    private Callable<Void> read(final DumpReader reader, final StageStats stats,
+                                final BlockingQueue<Document> documents,
+                                final SnapshotWriter.Collection collection, final Converter converter) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                stats.start();
+                try {
+                    reader.read(new DumpReader.RecordHandler() {
+                        @Override
+                        public void onRecord(JsonObject record) throws InterruptedException {
+                            JsonObject document = converter.convert(record);
+                            if (document == null) {
+                                stats.reject();
+                                return;
+                            }
+                            stats.record();
+                            documents.put(new Document(collection, document));
+                        }
+                    });
+                } finally {
+                    stats.finish();
+                    end(documents, END_OF_DOCUMENTS, 1);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * readRoutes() creates the stage that gathers the BusRoutes records into routes
+     *
+     * DataMall returns BusRoutes grouped by bus service and direction, so a route is
+     * complete as soon as a record of another service is read. A service that turns up
+     * again later means the dump is not grouped, and cannot be ingested in one pass.
+     */
+    private Callable<Void> readRoutes(final DumpReader reader, final BlockingQueue<List<JsonObject>> routes) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final Set<String> seen = new HashSet<>();
+                final List<JsonObject> route = new ArrayList<>();
+                final String[] routeKey = {null};
+
+                busRoutesStage.start();
+                try {
+                    reader.read(new DumpReader.RecordHandler() {
+                        @Override
+                        public void onRecord(JsonObject record) throws IOException, InterruptedException {
+                            if (!LtaRecords.isValidRouteStop(record)) {
+                                busRoutesStage.reject();
+                                return;
+                            }
+                            busRoutesStage.record();
+
+                            String key = LtaRecords.serviceKey(record);
+                            if (!key.equals(routeKey[0])) {
+                                if (!seen.add(key))
+                                    throw new IOException("BusRoutes are not grouped by service: " +
+                                            key + " appears more than once");
+                                if (!route.isEmpty())
+                                    routes.put(new ArrayList<>(route));
+                                route.clear();
+                                routeKey[0] = key;
+                            }
+                            route.add(record);
+                        }
+                    });
+                    if (!route.isEmpty())
+                        routes.put(new ArrayList<>(route));
+                } finally {
+                    busRoutesStage.finish();
+                    end(routes, END_OF_ROUTES, workers);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * segment() creates a segment worker, which builds the segments of each route it takes
+     */
+    private Callable<Void> segment(final BlockingQueue<List<JsonObject>> routes,
+                                   final BlockingQueue<Document> documents) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                segmentStage.start();
+                try {
+                    while (true) {
+                        List<JsonObject> route = routes.take();
+                        if (route == END_OF_ROUTES)
+                            break;
+                        List<JsonObject> segments = segmenter.segments(route);
+                        if (segments.isEmpty())
+                            segmentStage.reject();
+                        for (JsonObject segment : segments) {
+                            segmentStage.record();
+                            documents.put(new Document(SnapshotWriter.Collection.BUS_SEGMENTS, segment));
+                        }
+                    }
+                } finally {
+                    segmentStage.finish();
+                    end(documents, END_OF_DOCUMENTS, 1);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * write() writes documents to the snapshot until every stage feeding the writer has finished
+     */
+    private void write(SnapshotWriter writer, BlockingQueue<Document> documents, int producers)
+            throws IOException, InterruptedException {
+        writeStage.start();
+        try {
+            while (producers > 0) {
+                Document document = documents.take();
+                if (document == END_OF_DOCUMENTS) {
+                    producers--;
+                    continue;
+                }
+                writer.write(document.collection, document.document);
+                writeStage.record();
+            }
+        } finally {
+            writeStage.finish();
+        }
+    }
+
+    /**
+     * end() tells the consumers of a queue that a stage has finished, whether or not it
+     * succeeded, so that they do not wait for it forever
+     */
+    private static <T> void end(BlockingQueue<T> queue, T marker, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++)
+                queue.put(marker);
+        } catch (InterruptedException e) {
+            // the pipeline is shutting down and nothing is waiting for the marker
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * awaitStage() waits for a stage and rethrows its failure, if any
+     */
+    private static void awaitStage(Future<Void> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * <b>LtaRecords</b> validates DataMall records and converts them into the documents of
+ * the routing snapshot. The documents have the same fields as those saved by the
+ * server's LTA import (see server/src/lta/lta.api.ts), so the snapshot can be loaded
+ * into the server's collections as-is.
+ */
+final class LtaRecords {
+    static final String[] SERVICE_TIMES = {
+            "WD_FirstBus", "WD_LastBus", "SAT_FirstBus", "SAT_LastBus", "SUN_FirstBus", "SUN_LastBus"};
+
+    private LtaRecords() {
+    }
+
+    /**
+     * busStop() converts a BusStops record into a bus stop document
+     * @param stop the BusStops record
+     * @return the bus stop, or null if the record is invalid
+     */
+    static JsonObject busStop(JsonObject stop) {
+        if (!isString(stop, "BusStopCode") || !isString(stop, "RoadName") ||
+                !isString(stop, "Description") || !isNumber(stop, "Latitude") || !isNumber(stop, "Longitude"))
+            return null;
+
+        JsonArray coordinates = new JsonArray();
+        coordinates.add(stop.get("Longitude"));
+        coordinates.add(stop.get("Latitude"));
+        JsonObject location = new JsonObject();
+        location.addProperty("type", "Point");
+        location.add("coordinates", coordinates);
+
+        JsonObject busStop = new JsonObject();
+        busStop.add("BusStopCode", stop.get("BusStopCode"));
+        busStop.add("RoadName", stop.get("RoadName"));
+        busStop.add("Description", stop.get("Description"));
+        busStop.add("Location", location);
+        return busStop;
+    }
+
+    /**
+     * busService() converts a BusServices record into a bus service document
+     * @param service the BusServices record
+     * @return the bus service, or null if the record is invalid
+     */
+    static JsonObject busService(JsonObject service) {
+        String[] fields = {"ServiceNo", "Operator", "Category", "OriginCode", "DestinationCode", "LoopDesc"};
+        for (String field : fields) {
+            if (!isString(service, field))
+                return null;
+        }
+        if (!isNumber(service, "Direction"))
+            return null;
+
+        JsonObject busService = new JsonObject();
+        busService.add("ServiceNo", service.get("ServiceNo"));
+        busService.add("Operator", service.get("Operator"));
+        busService.add("Direction", new JsonPrimitive(service.get("Direction").getAsInt()));
+        busService.add("Category", service.get("Category"));
+        busService.add("OriginCode", service.get("OriginCode"));
+        busService.add("DestinationCode", service.get("DestinationCode"));
+        busService.add("LoopDesc", service.get("LoopDesc"));
+        return busService;
+    }
+
+    /**
+     * isValidRouteStop() checks that a BusRoutes record has what is needed to build segments
+     * @param stop the BusRoutes record
+     * @return true if the record can be used
+     */
+    static boolean isValidRouteStop(JsonObject stop) {
+        if (!isString(stop, "ServiceNo") || !isNumber(stop, "Direction") ||
+                !isNumber(stop, "StopSequence") || !isString(stop, "BusStopCode"))
+            return false;
+        JsonElement distance = stop.get("Distance");
+        return distance == null || distance.isJsonNull() || isNumber(stop, "Distance");
+    }
+
+    /**
+     * serviceKey() gets the key of the bus service and direction of a BusRoutes record
+     * @param stop a valid BusRoutes record
+     * @return the key, e.g. "96_1"
+     */
+    static String serviceKey(JsonObject stop) {
+        return stop.get("ServiceNo").getAsString() + "_" + stop.get("Direction").getAsInt();
+    }
+
+    /**
+     * distance() gets the distance along the route of a BusRoutes record
+     * @param stop a valid BusRoutes record
+     * @return the distance in km; DataMall leaves it out for some stops, which counts as 0
+     */
+    static double distance(JsonObject stop) {
+        JsonElement distance = stop.get("Distance");
+        return distance == null || distance.isJsonNull() ? 0 : distance.getAsDouble();
+    }
+
+    private static boolean isString(JsonObject record, String field) {
+        JsonElement value = record.get(field);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isString();
+    }
+
+    private static boolean isNumber(JsonObject record, String field) {
+        JsonElement value = record.get(field);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber();
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <b>RouteSegmenter</b> builds the bus segments of one bus service in one direction from
+ * its BusRoutes records:
+ * <ul>
+ *     <li>a "finegrain" segment between each pair of consecutive bus stops, as built by
+ *     the server's LTA import, and</li>
+ *     <li>a single "hubtohub" segment for the whole route, which carries the service's
+ *     activity: when its first and last buses run on each type of day, and how long the
+ *     route takes end to end.</li>
+ * </ul>
+ */
+final class RouteSegmenter {
+    static final String FINEGRAIN = "finegrain";
+    static final String HUB_TO_HUB = "hubtohub";
+
+    /**
+     * Segments shorter than this, in km, are travelled at the normal speed; longer ones at
+     * the express speed
+     */
+    private static final double EXPRESS_DISTANCE = 5;
+
+    private final double speedNormal;
+    private final double speedExpress;
+
+    /**
+     * Constructor for a RouteSegmenter
+     * @param speedNormal the average speed of a bus along a normal segment, in km/h
+     * @param speedExpress the average speed of a bus along an express segment, in km/h
+     */
+    RouteSegmenter(double speedNormal, double speedExpress) {
+        this.speedNormal = speedNormal;
+        this.speedExpress = speedExpress;
+    }
+
+    /**
+     * segments() builds the segments of a route
+     * @param route the valid BusRoutes records of a single bus service and direction, in any order
+     * @return the finegrain segments in order, followed by the hubtohub segment, or an empty list
+     * if the route has fewer than two bus stops
+     */
+    List<JsonObject> segments(List<JsonObject> route) {
+        List<JsonObject> stops = new ArrayList<>(route);
+        Collections.sort(stops, new Comparator<JsonObject>() {
+            @Override
+            public int compare(JsonObject a, JsonObject b) {
+                return Double.compare(a.get("StopSequence").getAsDouble(), b.get("StopSequence").getAsDouble());
+            }
+        });
+
+        List<JsonObject> segments = new ArrayList<>(stops.size());
+        int totalTime = 0;
+
+        for (int i = 0; i < stops.size() - 1; i++) {
+            JsonObject stop = stops.get(i);
+            JsonObject next = stops.get(i + 1);
+
+            /* Sometimes the distance is incorrectly reported as zero or negative, so use the
+               absolute value plus a small addition to make sure it's not zero */
+            double distance = Math.abs(LtaRecords.distance(next) - LtaRecords.distance(stop)) + 0.01;
+            int time = (int) Math.ceil(distance / (distance < EXPRESS_DISTANCE ? speedNormal : speedExpress) * 60);
+            totalTime += time;
+
+            segments.add(segment(stop, next.get("BusStopCode").getAsString(), time, i, FINEGRAIN));
+        }
+
+        if (!segments.isEmpty()) {
+            JsonObject first = stops.get(0);
+            String destination = stops.get(stops.size() - 1).get("BusStopCode").getAsString();
+            segments.add(segment(first, destination, totalTime, 0, HUB_TO_HUB));
+        }
+
+        return segments;
+    }
+
+    /**
+     * segment() builds a segment starting at a bus stop of the route, with the service times
+     * of that bus stop
+     */
+    private static JsonObject segment(JsonObject origin, String destinationCode, int travelTime,
+                                      int sequence, String segmentType) {
+        JsonObject segment = new JsonObject();
+        segment.addProperty("ServiceNo", origin.get("ServiceNo").getAsString());
+        segment.addProperty("Direction", origin.get("Direction").getAsInt());
+        segment.addProperty("OriginCode", origin.get("BusStopCode").getAsString());
+        segment.addProperty("DestinationCode", destinationCode);
+        segment.addProperty("TravelTime", travelTime);
+        for (String field : LtaRecords.SERVICE_TIMES) {
+            if (origin.has(field))
+                segment.add(field, origin.get(field));
+        }
+        segment.addProperty("Sequence", sequence);
+        segment.addProperty("SegmentType", segmentType);
+        return segment;
+    }
+}
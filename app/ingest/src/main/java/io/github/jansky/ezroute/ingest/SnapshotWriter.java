@@ -0,0 +1,138 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <b>SnapshotWriter</b> writes the routing snapshot: one file per server collection, with
+ * one JSON document per line, ready for mongoimport.
+ *
+ * Documents are appended as they arrive, so the snapshot is written in a single pass
+ * without holding it in memory. The files are written under temporary names and only
+ * renamed into place by commit(), so a failed run never leaves a partial snapshot that
+ * looks complete.
+ */
+final class SnapshotWriter implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    /**
+     * <b>Collection</b> is a server collection in the snapshot
+     */
+    enum Collection {
+        BUS_STOPS("busstops"),
+        BUS_SERVICES("busservices"),
+        BUS_SEGMENTS("bussegments");
+
+        private final String name;
+
+        Collection(String name) {
+            this.name = name;
+        }
+
+        /**
+         * getFileName() gets the name of the collection's file in the snapshot
+         * @return the file name
+         */
+        String getFileName() {
+            return name + ".json";
+        }
+    }
+
+    private final File outputDir;
+    private final Gson gson = new Gson();
+    private final Map<Collection, Writer> writers = new EnumMap<>(Collection.class);
+    private final Map<Collection, Long> counts = new EnumMap<>(Collection.class);
+
+    /**
+     * Constructor for a SnapshotWriter
+     * @param outputDir the directory to write the snapshot to, which is created if needed
+     * @throws IOException if the snapshot files cannot be created
+     */
+    SnapshotWriter(File outputDir) throws IOException {
+        this.outputDir = outputDir;
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IOException("Cannot create " + outputDir);
+
+        try {
+            for (Collection collection : Collection.values()) {
+                writers.put(collection, new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(partialFile(collection)), UTF_8)));
+                counts.put(collection, 0L);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * write() appends a document to a collection
+     * @param collection the collection
+     * @param document the document
+     * @throws IOException if the document cannot be written
+     */
+    void write(Collection collection, JsonObject document) throws IOException {
+        Writer writer = writers.get(collection);
+        gson.toJson(document, writer);
+        writer.write('\n');
+        counts.put(collection, counts.get(collection) + 1);
+    }
+
+    /**
+     * getCount() gets the number of documents written to a collection
+     * @param collection the collection
+     * @return the number of documents
+     */
+    long getCount(Collection collection) {
+        return counts.get(collection);
+    }
+
+    /**
+     * commit() finishes the snapshot, replacing any previous snapshot in the output directory
+     * @throws IOException if the snapshot cannot be finished
+     */
+    void commit() throws IOException {
+        for (Writer writer : writers.values())
+            writer.close();
+        for (Collection collection : Collection.values()) {
+            File file = new File(outputDir, collection.getFileName());
+            if (file.exists() && !file.delete())
+                throw new IOException("Cannot replace " + file);
+            if (!partialFile(collection).renameTo(file))
+                throw new IOException("Cannot write " + file);
+        }
+    }
+
+    /**
+     * close() closes the snapshot files, discarding them unless the snapshot was committed
+     */
+    @Override
+    public void close() {
+        for (Map.Entry<Collection, Writer> entry : writers.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                // the partial file is deleted anyway
+            }
+            File partial = partialFile(entry.getKey());
+            if (partial.exists())
+                partial.delete();
+        }
+    }
+
+    private File partialFile(Collection collection) {
+        return new File(outputDir, collection.getFileName() + PARTIAL_SUFFIX);
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.jansky.ezroute.ingest;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>StageStats</b> counts the records handled by one stage of the ingestion pipeline,
+ * and how long the stage ran for. A stage may be run by several threads at once: it
+ * starts when the first of them starts, and finishes when the last of them finishes.
+ */
+final class StageStats {
+    private final String name;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong startNanos = new AtomicLong();
+    private volatile long endNanos;
+
+    /**
+     * Constructor for a StageStats
+     * @param name the name of the stage, as shown in the report
+     */
+    StageStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * start() is called by each thread of the stage before it handles any records
+     */
+    void start() {
+        running.incrementAndGet();
+        startNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * finish() is called by each thread of the stage once it has handled all its records
+     */
+    void finish() {
+        if (running.decrementAndGet() == 0)
+            endNanos = System.nanoTime();
+    }
+
+    /**
+     * record() counts a record handled by the stage
+     */
+    void record() {
+        records.incrementAndGet();
+    }
+
+    /**
+     * reject() counts an invalid record that the stage skipped
+     */
+    void reject() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * getName() gets the name of the stage
+     * @return the name of the stage
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * getRecords() gets the number of records handled by the stage so far
+     * @return the number of records
+     */
+    long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * getRejected() gets the number of invalid records skipped by the stage so far
+     * @return the number of rejected records
+     */
+    long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * getElapsedNanos() gets how long the stage ran for
+     * @return the time in nanoseconds, up to now if the stage is still running
+     */
+    long getElapsedNanos() {
+        long start = startNanos.get();
+        if (start == 0)
+            return 0;
+        long end = running.get() == 0 && endNanos != 0 ? endNanos : System.nanoTime();
+        return end - start;
+    }
+
+    /**
+     * getRecordsPerSecond() gets the throughput of the stage
+     * @return the number of records handled per second, or 0 if the stage has not run
+     */
+    double getRecordsPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : getRecords() / (elapsed / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%-12s %10d records %8d rejected %9.3f s %12.0f records/s",
+                name, getRecords(), getRejected(), getElapsedNanos() / 1e9, getRecordsPerSecond());
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.jansky.ezroute.ingest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the throughput of each stage of the ingestion pipeline on a synthetic dump the
+ * size of the full DataMall datasets, with one segment worker and with several. Results
+ * are printed to standard output. It is left out of the test task, and is run with
+ * ./gradlew :ingest:benchmark
+ */
+public class IngestBenchmark {
+    private static final int PAGE_SIZE = 500;
+    private static final int BUS_STOPS = 5000;
+    private static final int BUS_SERVICES = 550;
+    private static final int STOPS_PER_ROUTE = 50;
+    private static final int[] WORKERS = {1, 4};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stages_report_throughput() throws Exception {
+        File dump = folder.newFolder("dump");
+        writeDump(dump);
+
+        for (int workers : WORKERS) {
+            IngestPipeline pipeline = new IngestPipeline(dump, folder.newFolder("snapshot-" + workers),
+                    workers, Ingest.DEFAULT_QUEUE_SIZE);
+            long start = System.nanoTime();
+            SnapshotWriter snapshot = pipeline.run();
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US, "%d segment workers: %.3f s", workers, elapsed / 1e9));
+            for (StageStats stage : pipeline.getStages())
+                System.out.println(stage);
+
+            assertEquals(BUS_STOPS, snapshot.getCount(SnapshotWriter.Collection.BUS_STOPS));
+            assertEquals(BUS_SERVICES * 2, snapshot.getCount(SnapshotWriter.Collection.BUS_SERVICES));
+            assertEquals(BUS_SERVICES * 2 * (STOPS_PER_ROUTE + 1),
+                    snapshot.getCount(SnapshotWriter.Collection.BUS_SEGMENTS));
+        }
+    }
+
+    /**
+     * writeDump() writes a dump with the same shape as DataMall's: pages of 500 records,
+     * with BusRoutes grouped by service and direction
+     */
+    private static void writeDump(File dump) throws IOException {
+        Random random = new Random(42);
+
+        StringBuilder page = new StringBuilder();
+        int records = 0;
+        for (int i = 0; i < BUS_STOPS; i++) {
+            append(page, String.format(Locale.US, "{\"BusStopCode\": \"%05d\", \"RoadName\": \"Road %d\", " +
+                    "\"Description\": \"Stop %d\", \"Latitude\": %.6f, \"Longitude\": %.6f}",
+                    i, i / 20, i, 1.25 + random.nextDouble() * 0.2, 103.6 + random.nextDouble() * 0.4));
+            records = flush(dump, IngestPipeline.BUS_STOPS, page, records + 1);
+        }
+        flush(dump, IngestPipeline.BUS_STOPS, page, 0);
+
+        records = 0;
+        for (int service = 0; service < BUS_SERVICES; service++) {
+            for (int direction = 1; direction <= 2; direction++) {
+                append(page, String.format(Locale.US, "{\"ServiceNo\": \"%d\", \"Operator\": \"SBST\", " +
+                        "\"Direction\": %d, \"Category\": \"TRUNK\", \"OriginCode\": \"%05d\", " +
+                        "\"DestinationCode\": \"%05d\", \"LoopDesc\": \"\"}",
+                        service, direction, service, BUS_STOPS - 1 - service));
+                records = flush(dump, IngestPipeline.BUS_SERVICES, page, records + 1);
+            }
+        }
+        flush(dump, IngestPipeline.BUS_SERVICES, page, 0);
+
+        records = 0;
+        for (int service = 0; service < BUS_SERVICES; service++) {
+            for (int direction = 1; direction <= 2; direction++) {
+                double distance = 0;
+                for (int stop = 1; stop <= STOPS_PER_ROUTE + 1; stop++) {
+                    append(page, String.format(Locale.US, "{\"ServiceNo\": \"%d\", \"Operator\": \"SBST\", " +
+                            "\"Direction\": %d, \"StopSequence\": %d, \"BusStopCode\": \"%05d\", " +
+                            "\"Distance\": %.1f, \"WD_FirstBus\": \"0530\", \"WD_LastBus\": \"2330\", " +
+                            "\"SAT_FirstBus\": \"0530\", \"SAT_LastBus\": \"2330\", " +
+                            "\"SUN_FirstBus\": \"0600\", \"SUN_LastBus\": \"2330\"}",
+                            service, direction, stop, random.nextInt(BUS_STOPS), distance));
+                    distance += 0.2 + random.nextDouble() * (random.nextInt(20) == 0 ? 8 : 0.8);
+                    records = flush(dump, IngestPipeline.BUS_ROUTES, page, records + 1);
+                }
+            }
+        }
+        flush(dump, IngestPipeline.BUS_ROUTES, page, 0);
+    }
+
+    private static void append(StringBuilder page, String record) {
+        if (page.length() > 0)
+            page.append(',');
+        page.append(record);
+    }
+
+    /**
+     * flush() writes the page once it is full, or whatever is left of it when records is 0
+     * @return the number of records added to the dataset so far
+     */
+    private static int flush(File dump, String dataset, StringBuilder page, int records) throws IOException {
+        if (records != 0 && records % PAGE_SIZE != 0)
+            return records;
+        File dir = new File(dump, dataset);
+        String[] pages = dir.list();
+        int skip = pages == null ? 0 : pages.length * PAGE_SIZE;
+        if (records == 0 && page.length() == 0 && skip > 0)
+            return 0;
+        IngestPipelineTests.writePage(dump, dataset, skip, page.toString());
+        page.setLength(0);
+        return records;
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.jansky.ezroute.ingest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ingestion pipeline, run against the recorded dump in test/resources/lta-dump
+ */
+public class IngestPipelineTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshot_contains_the_dump() throws Exception {
+        File output = folder.newFolder("snapshot");
+        SnapshotWriter snapshot = new IngestPipeline(recordedDump(), output, 2, 16).run();
+
+        assertEquals(4, snapshot.getCount(SnapshotWriter.Collection.BUS_STOPS));
+        assertEquals(3, snapshot.getCount(SnapshotWriter.Collection.BUS_SERVICES));
+        assertEquals(8, snapshot.getCount(SnapshotWriter.Collection.BUS_SEGMENTS));
+
+        Map<String, JsonObject> stops = new HashMap<>();
+        for (JsonObject stop : documents(output, SnapshotWriter.Collection.BUS_STOPS))
+            stops.put(stop.get("BusStopCode").getAsString(), stop);
+        JsonObject location = stops.get("18331").getAsJsonObject("Location");
+        assertEquals("Point", location.get("type").getAsString());
+        assertEquals(103.78458, location.getAsJsonArray("coordinates").get(0).getAsDouble(), 1e-9);
+        assertEquals(1.29384, location.getAsJsonArray("coordinates").get(1).getAsDouble(), 1e-9);
+        assertFalse(stops.containsKey("17099"));
+
+        Map<String, JsonObject> segments = new HashMap<>();
+        for (JsonObject segment : documents(output, SnapshotWriter.Collection.BUS_SEGMENTS))
+            segments.put(segment.get("ServiceNo").getAsString() + "_" + segment.get("Direction").getAsInt() + ":" +
+                    segment.get("SegmentType").getAsString() + ":" + segment.get("Sequence").getAsInt(), segment);
+
+        // 96 direction 1 spans both pages, and its records are out of order
+        JsonObject first = segments.get("96_1:finegrain:0");
+        assertEquals("17091", first.get("OriginCode").getAsString());
+        assertEquals("17171", first.get("DestinationCode").getAsString());
+        assertEquals(2, first.get("TravelTime").getAsInt());
+        assertEquals("0600", first.get("WD_FirstBus").getAsString());
+        JsonObject express = segments.get("96_1:finegrain:2");
+        assertEquals("18331", express.get("DestinationCode").getAsString());
+        assertEquals(13, express.get("TravelTime").getAsInt());
+
+        JsonObject hubToHub = segments.get("96_1:hubtohub:0");
+        assertEquals("17091", hubToHub.get("OriginCode").getAsString());
+        assertEquals("18331", hubToHub.get("DestinationCode").getAsString());
+        assertEquals(16, hubToHub.get("TravelTime").getAsInt());
+        assertEquals("0630", hubToHub.get("SUN_FirstBus").getAsString());
+        assertEquals("2300", hubToHub.get("SUN_LastBus").getAsString());
+
+        // the record of 96 direction 2 without a bus stop code is skipped
+        assertFalse(segments.containsKey("96_2:finegrain:1"));
+        assertEquals(13, segments.get("96_2:hubtohub:0").get("TravelTime").getAsInt());
+        // a missing distance counts as 0, as in the server's import
+        assertEquals(1, segments.get("282_1:finegrain:0").get("TravelTime").getAsInt());
+
+        assertFalse(new File(output, "bussegments.json.partial").exists());
+    }
+
+    @Test
+    public void stages_report_their_records() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(recordedDump(), folder.newFolder("snapshot"), 3, 16);
+        pipeline.run();
+
+        long[][] expected = {{4, 1}, {3, 0}, {8, 1}, {8, 0}, {15, 0}};
+        List<StageStats> stages = pipeline.getStages();
+        assertEquals(expected.length, stages.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(stages.get(i).getName(), expected[i][0], stages.get(i).getRecords());
+            assertEquals(stages.get(i).getName(), expected[i][1], stages.get(i).getRejected());
+            assertTrue(stages.get(i).getElapsedNanos() > 0);
+            assertTrue(stages.get(i).getRecordsPerSecond() > 0);
+        }
+    }
+
+    @Test
+    public void snapshot_does_not_depend_on_queue_size_or_workers() throws Exception {
+        File roomy = folder.newFolder("roomy");
+        File tight = folder.newFolder("tight");
+        new IngestPipeline(recordedDump(), roomy, 1, 1024).run();
+        // with a queue of one, every stage is held back by the stage after it
+        new IngestPipeline(recordedDump(), tight, 4, 1).run();
+
+        for (SnapshotWriter.Collection collection : SnapshotWriter.Collection.values())
+            assertEquals(sortedLines(new File(roomy, collection.getFileName())),
+                    sortedLines(new File(tight, collection.getFileName())));
+    }
+
+    @Test
+    public void ungrouped_routes_fail_without_a_snapshot() throws Exception {
+        File dump = folder.newFolder("dump");
+        writePage(dump, IngestPipeline.BUS_STOPS, 0, "");
+        writePage(dump, IngestPipeline.BUS_SERVICES, 0, "");
+        writePage(dump, IngestPipeline.BUS_ROUTES, 0,
+                routeStop("96", 1, "17091") + "," + routeStop("282", 1, "17171") + "," +
+                routeStop("96", 1, "17171"));
+        File output = folder.newFolder("snapshot");
+
+        try {
+            new IngestPipeline(dump, output, 2, 1).run();
+            fail("ungrouped BusRoutes were ingested");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("96_1"));
+        }
+        String[] files = output.list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void malformed_pages_fail() throws Exception {
+        File dump = folder.newFolder("dump");
+        writePage(dump, IngestPipeline.BUS_STOPS, 0, "");
+        writePage(dump, IngestPipeline.BUS_SERVICES, 0, "");
+        writePage(dump, IngestPipeline.BUS_ROUTES, 0, routeStop("96", 1, "17091"));
+        writePage(dump, IngestPipeline.BUS_ROUTES, 500, "{\"ServiceNo\": ");
+
+        try {
+            new IngestPipeline(dump, folder.newFolder("snapshot"), 1, 4).run();
+            fail("a malformed page was ingested");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("500.json"));
+        }
+    }
+
+    static File recordedDump() throws Exception {
+        return new File(IngestPipelineTests.class.getResource("/lta-dump").toURI());
+    }
+
+    static void writePage(File dump, String dataset, int skip, String values) throws IOException {
+        File dir = new File(dump, dataset);
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, skip + ".json")), "UTF-8")) {
+            writer.write("{\"odata.metadata\": \"\", \"value\": [" + values + "]}");
+        }
+    }
+
+    private static String routeStop(String serviceNo, int direction, String busStopCode) {
+        return "{\"ServiceNo\": \"" + serviceNo + "\", \"Direction\": " + direction +
+                ", \"StopSequence\": 1, \"BusStopCode\": \"" + busStopCode + "\", \"Distance\": 0}";
+    }
+
+    private static List<JsonObject> documents(File snapshot, SnapshotWriter.Collection collection)
+            throws IOException {
+        List<JsonObject> documents = new ArrayList<>();
+        for (String line : sortedLines(new File(snapshot, collection.getFileName())))
+            documents.add(JsonParser.parseString(line).getAsJsonObject());
+        return documents;
+    }
+
+    private static List<String> sortedLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
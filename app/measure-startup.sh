@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+# Measures cold starts of the app on a connected device or emulator.
+#
+# Usage: ./measure-startup.sh [runs]
+#
+# Install the app first (./gradlew installDebug). Each run stops the app, clears
+# Logcat, launches MapsActivity and collects the StartupTracer markers that the app
+# writes under the EZRouteStartup tag, along with the launch time reported by the
+# activity manager. The median and p90 of each marker, in milliseconds since the
+# start of the process, are printed at the end.
+
+set -e
+
+RUNS=${1:-10}
+PACKAGE=io.github.jansky.ezroute
+ACTIVITY=$PACKAGE/.MapsActivity
+# how long to wait for the markers after launching, in seconds
+SETTLE=8
+
+# the map, and so time to interactive, needs the location permission
+adb shell pm grant $PACKAGE android.permission.ACCESS_FINE_LOCATION
+adb shell pm grant $PACKAGE android.permission.ACCESS_COARSE_LOCATION
+
+RESULTS=$(mktemp)
+trap 'rm -f "$RESULTS"' EXIT
+
+for run in $(seq 1 "$RUNS"); do
+    adb shell am force-stop $PACKAGE
+    adb logcat -c
+    TOTAL=$(adb shell am start -W -n $ACTIVITY | tr -d '\r' | awk -F': ' '/^TotalTime/ {print $2}')
+    sleep $SETTLE
+    echo "am_total_time $TOTAL" >> "$RESULTS"
+    adb logcat -d -s EZRouteStartup:I | tr -d '\r' | grep -o '[a-z_]*=[0-9]*$' | tr '=' ' ' >> "$RESULTS"
+    echo "run $run/$RUNS: am TotalTime ${TOTAL} ms"
+done
+
+echo
+printf "%-20s %6s %8s %8s\n" marker runs median p90
+for marker in am_total_time application_created activity_created first_frame map_ready search_ready \
+        interactive local_data_warm http_warm; do
+    grep "^$marker " "$RESULTS" | awk '{print $2}' | sort -n | awk -v marker=$marker '
+        { values[NR] = $1 }
+        END {
+            if (NR == 0) { printf "%-20s %6d %8s %8s\n", marker, 0, "-", "-"; exit }
+            p90 = int(0.9 * NR + 0.999999)
+            printf "%-20s %6d %8d %8d\n", marker, NR, values[int((NR + 1) / 2)], values[p90]
+        }'
+done
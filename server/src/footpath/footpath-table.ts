@@ -0,0 +1,403 @@
+import BusStop from "../bus-stop/bus-stop.interface";
+import storedFootpathTableModel from "./stored-footpath-table.model";
+
+/**
+ * A walking transfer from one bus stop to a nearby bus stop
+ */
+export interface Footpath {
+    /**
+     * The unique code of the bus stop walked to
+     */
+    BusStopCode: string
+    /**
+     * The straight-line distance between the bus stops, in meters
+     */
+    distance: number
+    /**
+     * The estimated walking time, in minutes
+     */
+    walkingTime: number
+}
+
+/**
+ * The version of the compact binary footpath table encoding
+ */
+export const FOOTPATH_TABLE_VERSION = 1;
+
+/**
+ * The mean radius of the Earth, in meters
+ */
+const EARTH_RADIUS = 6371000;
+
+/**
+ * Calculates the great-circle distance between two GPS coordinates
+ * @param a The first coordinate, as [longitude, latitude] as in GeoJSON
+ * @param b The second coordinate, as [longitude, latitude] as in GeoJSON
+ * @returns The distance, in meters
+ */
+export function distanceBetween(a: number[], b: number[]): number {
+
+    const toRadians = Math.PI / 180;
+    const dLat = (b[1] - a[1]) * toRadians;
+    const dLong = (b[0] - a[0]) * toRadians;
+    const h = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+        Math.cos(a[1] * toRadians) * Math.cos(b[1] * toRadians) * Math.sin(dLong / 2) * Math.sin(dLong / 2);
+
+    return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+}
+
+/**
+ * A precomputed table of the walking transfers between bus stops
+ *
+ * Bus segments only connect bus stops with the same code, so without footpaths a route can never transfer to the bus
+ * stop across the road. The footpath table holds, for every bus stop, the bus stops within a walking radius of it and
+ * the time it takes to walk to them, so that path-finding can use them as transfer edges.
+ *
+ * The table is built once, when the bus stop data is regenerated, with a spatial grid join: the bus stops are put into
+ * square cells as wide as the walking radius, so each bus stop only has to be compared with the bus stops in its own
+ * cell and the eight cells around it, rather than with every other bus stop.
+ *
+ * In memory, the footpaths are stored in compressed sparse rows: the footpaths of the i-th bus stop are at positions
+ * {@code offsets[i]} to {@code offsets[i + 1] - 1} of {@code neighbours} (bus stop indices) and {@code distances}.
+ */
+class FootpathTable {
+
+    /**
+     * The default walking radius, in meters
+     */
+    public static readonly DEFAULT_RADIUS = 400;
+
+    /**
+     * The walking speed, in meters per minute (4.8 km/h)
+     */
+    public static readonly WALKING_SPEED = 80;
+
+    /**
+     * How much longer the walk is than the straight-line distance, e.g. to cross the road at a crossing
+     */
+    public static readonly DETOUR_FACTOR = 1.3;
+
+    /**
+     * The footpath table loaded from the database, shared by all searches
+     */
+    private static loaded : Promise<FootpathTable> | null = null;
+
+    /**
+     * The index of each bus stop, by its unique code
+     */
+    private readonly indices : {[key: string]: number} = {};
+
+    /**
+     * Constructs a footpath table from its compressed sparse rows
+     * @param radius The walking radius, in meters
+     * @param codes The unique code of each bus stop
+     * @param offsets The position of the first footpath of each bus stop, followed by the number of footpaths
+     * @param neighbours The index of the bus stop walked to of each footpath
+     * @param distances The distance of each footpath, in whole meters
+     */
+    private constructor(public readonly radius: number,
+                        private readonly codes: string[],
+                        private readonly offsets: Uint32Array,
+                        private readonly neighbours: Uint32Array,
+                        private readonly distances: Uint16Array) {
+
+        codes.forEach((code, i) => this.indices[code] = i);
+    }
+
+    /**
+     * Builds the footpath table of a set of bus stops with a spatial grid join
+     * @param busStops The bus stops. Bus stops without a location are included, but have no footpaths.
+     * @param radius The walking radius, in meters
+     */
+    public static build(busStops: BusStop[], radius: number = FootpathTable.DEFAULT_RADIUS) : FootpathTable {
+
+        const coordinates = busStops.map(stop =>
+            stop.Location && stop.Location.coordinates.length >= 2 ? stop.Location.coordinates as number[] : null);
+
+        /* Project the bus stops onto a plane (an equirectangular projection around their mean latitude), which is
+           accurate to well within a percent over the size of a city. The cells are made a percent wider than the
+           radius, so that no pair of bus stops within the radius is more than one cell apart.
+         */
+        let latitudeSum = 0;
+        let located = 0;
+        coordinates.forEach(coordinate => {
+            if(coordinate) {
+                latitudeSum += coordinate[1];
+                located += 1;
+            }
+        });
+
+        const metersPerDegree = EARTH_RADIUS * Math.PI / 180;
+        const longitudeScale = Math.cos((located > 0 ? latitudeSum / located : 0) * Math.PI / 180);
+        const cellSize = radius * 1.01;
+
+        const cellOf = (coordinate: number[]) : number[] => [
+            Math.floor(coordinate[0] * metersPerDegree * longitudeScale / cellSize),
+            Math.floor(coordinate[1] * metersPerDegree / cellSize)
+        ];
+
+        const cells : {[key: string]: number[]} = {};
+
+        coordinates.forEach((coordinate, i) => {
+            if(!coordinate) return;
+            const [x, y] = cellOf(coordinate);
+            const key = `${x}_${y}`;
+            if(!cells.hasOwnProperty(key)) cells[key] = [];
+            cells[key].push(i);
+        });
+
+        /* Compare each bus stop with the bus stops after it in its own and the neighbouring cells, and add the
+           footpath in both directions
+         */
+        const footpaths : number[][] = busStops.map(_ => []);
+
+        coordinates.forEach((coordinate, i) => {
+            if(!coordinate) return;
+            const [x, y] = cellOf(coordinate);
+
+            for(let dx = -1; dx <= 1; dx++) {
+                for(let dy = -1; dy <= 1; dy++) {
+
+                    const cell = cells[`${x + dx}_${y + dy}`];
+                    if(!cell) continue;
+
+                    for(let j of cell) {
+                        if(j <= i) continue;
+
+                        const distance = distanceBetween(coordinate, coordinates[j] as number[]);
+                        if(distance > radius) continue;
+
+                        footpaths[i].push(j, Math.round(distance));
+                        footpaths[j].push(i, Math.round(distance));
+                    }
+
+                }
+            }
+        });
+
+        return FootpathTable.fromFootpaths(radius, busStops.map(stop => String(stop.BusStopCode)), footpaths);
+    }
+
+    /**
+     * Constructs a footpath table from the footpaths of each bus stop
+     * @param radius The walking radius, in meters
+     * @param codes The unique code of each bus stop
+     * @param footpaths The footpaths of each bus stop, as pairs of the index of the bus stop walked to and the
+     * distance in whole meters
+     */
+    private static fromFootpaths(radius: number, codes: string[], footpaths: number[][]) : FootpathTable {
+
+        const offsets = new Uint32Array(codes.length + 1);
+        let count = 0;
+        footpaths.forEach((pairs, i) => {
+            offsets[i] = count;
+            count += pairs.length / 2;
+        });
+        offsets[codes.length] = count;
+
+        const neighbours = new Uint32Array(count);
+        const distances = new Uint16Array(count);
+
+        footpaths.forEach((pairs, i) => {
+            const order : number[] = [];
+            for(let k = 0; k < pairs.length; k += 2) order.push(k);
+            order.sort((a, b) => pairs[a] - pairs[b]);
+
+            order.forEach((k, n) => {
+                neighbours[offsets[i] + n] = pairs[k];
+                distances[offsets[i] + n] = pairs[k + 1];
+            });
+        });
+
+        return new FootpathTable(radius, codes, offsets, neighbours, distances);
+    }
+
+    /**
+     * Estimates the time it takes to walk between two bus stops
+     * @param distance The straight-line distance between the bus stops, in meters
+     * @returns The walking time, in whole minutes, and at least one minute
+     */
+    public static walkingTime(distance: number) : number {
+
+        return Math.max(1, Math.ceil(distance * FootpathTable.DETOUR_FACTOR / FootpathTable.WALKING_SPEED));
+    }
+
+    /**
+     * The number of bus stops in the footpath table
+     */
+    public get stopCount() : number {
+        return this.codes.length;
+    }
+
+    /**
+     * The number of footpaths in the footpath table, counting each direction separately
+     */
+    public get footpathCount() : number {
+        return this.neighbours.length;
+    }
+
+    /**
+     * Finds the bus stops within walking distance of a bus stop
+     * @param code The unique code of the bus stop
+     * @returns The footpaths from the bus stop, ordered by the index of the bus stop walked to, or none if the bus stop
+     * is not in the table
+     */
+    public footpathsFrom(code: String) : Footpath[] {
+
+        const footpaths : Footpath[] = [];
+        const key = String(code);
+
+        if(!this.indices.hasOwnProperty(key)) return footpaths;
+
+        const i = this.indices[key];
+
+        for(let k = this.offsets[i]; k < this.offsets[i + 1]; k++) {
+            footpaths.push({
+                BusStopCode: this.codes[this.neighbours[k]],
+                distance: this.distances[k],
+                walkingTime: FootpathTable.walkingTime(this.distances[k])
+            });
+        }
+
+        return footpaths;
+    }
+
+    /**
+     * Encodes the footpath table in the compact binary footpath table encoding
+     *
+     * All integers are stored as unsigned LEB128 varints:
+     *
+     * {@code version} (1 byte)
+     * {@code radius} in meters
+     * {@code stopCount}, followed by {@code stopCount} bus stop codes, each as {@code byteLength} and its UTF-8 bytes
+     * {@code stopCount} rows of footpaths, each as {@code footpathCount}, followed by {@code footpathCount} footpaths,
+     * each as {@code neighbour} and {@code distance} in meters
+     *
+     * {@code neighbour} is the index of the bus stop walked to, less the index of the bus stop walked to by the previous
+     * footpath of the row (or 0 for the first footpath), so that most of them fit in a single byte.
+     */
+    public encode() : Buffer {
+
+        const bytes : number[] = [FOOTPATH_TABLE_VERSION];
+
+        const writeVarint = (value: number) => {
+            while(value > 0x7f) {
+                bytes.push((value & 0x7f) | 0x80);
+                value = Math.floor(value / 128);
+            }
+            bytes.push(value);
+        };
+
+        writeVarint(this.radius);
+        writeVarint(this.codes.length);
+        this.codes.forEach(code => {
+            const utf8 = Buffer.from(code, "utf8");
+            writeVarint(utf8.length);
+            utf8.forEach(b => bytes.push(b));
+        });
+
+        for(let i = 0; i < this.codes.length; i++) {
+            writeVarint(this.offsets[i + 1] - this.offsets[i]);
+            let previous = 0;
+            for(let k = this.offsets[i]; k < this.offsets[i + 1]; k++) {
+                writeVarint(this.neighbours[k] - previous);
+                writeVarint(this.distances[k]);
+                previous = this.neighbours[k];
+            }
+        }
+
+        return Buffer.from(bytes);
+    }
+
+    /**
+     * Decodes a footpath table from the compact binary footpath table encoding (see {@link encode})
+     * @param data The encoded footpath table
+     */
+    public static decode(data: Buffer) : FootpathTable {
+
+        if(data.length == 0 || data[0] != FOOTPATH_TABLE_VERSION) {
+            throw new Error(`Unsupported footpath table version`);
+        }
+
+        let position = 1;
+
+        const readVarint = () : number => {
+            let value = 0;
+            let scale = 1;
+            while(true) {
+                if(position >= data.length) throw new Error(`Footpath table is truncated`);
+                const b = data[position++];
+                value += (b & 0x7f) * scale;
+                if((b & 0x80) == 0) return value;
+                scale *= 128;
+            }
+        };
+
+        const radius = readVarint();
+        const stopCount = readVarint();
+
+        const codes : string[] = [];
+        for(let i = 0; i < stopCount; i++) {
+            const length = readVarint();
+            if(position + length > data.length) throw new Error(`Footpath table is truncated`);
+            codes.push(data.toString("utf8", position, position + length));
+            position += length;
+        }
+
+        const footpaths : number[][] = [];
+        for(let i = 0; i < stopCount; i++) {
+            const pairs : number[] = [];
+            const footpathCount = readVarint();
+            let previous = 0;
+            for(let n = 0; n < footpathCount; n++) {
+                previous += readVarint();
+                pairs.push(previous, readVarint());
+            }
+            footpaths.push(pairs);
+        }
+
+        return FootpathTable.fromFootpaths(radius, codes, footpaths);
+    }
+
+    /**
+     * Saves the footpath table to the database, replacing any previous footpath table
+     */
+    public async save() : Promise<void> {
+
+        await storedFootpathTableModel.deleteMany({});
+        await storedFootpathTableModel.create({
+            Data: this.encode(),
+            RadiusMeters: this.radius,
+            StopCount: this.stopCount,
+            FootpathCount: this.footpathCount
+        });
+    }
+
+    /**
+     * Gets the footpath table from the database
+     *
+     * The footpath table is only read from the database once and is then shared by all searches. If the database has
+     * no footpath table (e.g., the bus stop data has not been regenerated since footpaths were introduced), an empty
+     * footpath table is used, so that path-finding carries on without walking transfers. The empty footpath table is not
+     * kept, so the footpath table is used as soon as it is saved (e.g., by {@code npm run footpaths}) without restarting
+     * the server.
+     */
+    public static load() : Promise<FootpathTable> {
+
+        if(!FootpathTable.loaded) {
+            FootpathTable.loaded = storedFootpathTableModel.findOne({}).then(stored => {
+                if(stored) return FootpathTable.decode(stored.Data);
+                FootpathTable.loaded = null;
+                return FootpathTable.fromFootpaths(FootpathTable.DEFAULT_RADIUS, [], []);
+            }, e => {
+                FootpathTable.loaded = null;
+                throw e;
+            });
+        }
+
+        return FootpathTable.loaded as Promise<FootpathTable>;
+    }
+
+}
+
+export default FootpathTable;
@@ -0,0 +1,23 @@
+/**
+ * An interface for objects storing a precomputed footpath table (see {@link FootpathTable})
+ */
+interface StoredFootpathTable {
+    /**
+     * The footpath table in its compact binary encoding
+     */
+    Data: Buffer;
+    /**
+     * The walking radius the footpath table was built with, in meters
+     */
+    RadiusMeters: Number;
+    /**
+     * The number of bus stops in the footpath table
+     */
+    StopCount: Number;
+    /**
+     * The number of footpaths in the footpath table, counting each direction separately
+     */
+    FootpathCount: Number;
+}
+
+export default StoredFootpathTable;
@@ -0,0 +1,19 @@
+import mongoose from 'mongoose';
+import StoredFootpathTable from "./stored-footpath-table.interface";
+
+const storedFootpathTableSchema = new mongoose.Schema({
+    Data: Buffer,
+    RadiusMeters: Number,
+    StopCount: Number,
+    FootpathCount: Number
+});
+
+/**
+ * A Mongoose model for storing and retrieving the footpath table
+ *
+ * The collection holds a single document, which is replaced whenever the bus stop data is regenerated.
+ */
+const storedFootpathTableModel = mongoose.model<StoredFootpathTable & mongoose.Document>('FootpathTable',
+    storedFootpathTableSchema);
+
+export default storedFootpathTableModel;
@@ -0,0 +1,24 @@
+const mongoose = require('mongoose');
+import config from './config';
+import busStopModel from "./bus-stop/bus-stop.model";
+import FootpathTable from "./footpath/footpath-table";
+
+mongoose.connect(config.mongodb_url);
+
+// Build the footpath table from the bus stops already in the database, e.g. after loading an offline snapshot
+busStopModel.find({}).then(busStops => {
+
+    const start = Date.now();
+    const footpathTable = FootpathTable.build(busStops);
+    console.log(`Built ${footpathTable.footpathCount} footpaths between ${footpathTable.stopCount} bus stops in ${Date.now() - start} ms.`);
+
+    return footpathTable.save().then(() => {
+        console.log(`Saved ${footpathTable.encode().length} bytes of footpaths within ${footpathTable.radius} meters.`);
+        mongoose.disconnect();
+    });
+
+}).catch(failure => {
+    console.error(failure);
+    mongoose.disconnect();
+    process.exit(1);
+});
@@ -9,6 +9,7 @@ import BusStop from "./bus-stop/bus-stop.interface";
 import BusSegment from "./bus-segment/bus-segment.interface";
 import HubAndSpoke from "./path-finding/hub-and-spoke";
 import busRouteStopsModel from "./bus-route-stops/bus-route-stops.model";
+import FootpathTable from "./footpath/footpath-table";
 
 const api = new LTAApi(config.lta_api_key);
 
@@ -58,16 +59,23 @@ busStopModel.find({}).remove(err => {
 
                 apiResponse.then(([busStops, busServices, busSegments]) => {
 
+                    // Precompute the walking transfers between nearby bus stops
+                    const footpathTableStart = Date.now();
+                    const footpathTable = FootpathTable.build(busStops);
+                    console.log(`Built ${footpathTable.footpathCount} footpaths in ${Date.now() - footpathTableStart} ms.`);
+
                     // Save the raw data from the API
-                    Promise.all<BusStop[], BusService[], BusSegment[]>([
+                    Promise.all<BusStop[], BusService[], BusSegment[], void>([
                         busStopModel.insertMany(busStops),
                         busServiceModel.insertMany(busServices),
-                        busSegmentModel.insertMany(busSegments)
+                        busSegmentModel.insertMany(busSegments),
+                        footpathTable.save()
                     ]).then(_ => {
 
                         console.log(`Saved ${busStops.length} bus stops.`);
                         console.log(`Saved ${busServices.length} bus services.`);
                         console.log(`Saved ${busSegments.length} fine-grain bus segments.`);
+                        console.log(`Saved ${footpathTable.footpathCount} footpaths within ${footpathTable.radius} meters.`);
 
                         // Generate additional information used for hub-and-spoke
                         // and point-to-point route finding
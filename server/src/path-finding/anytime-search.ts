@@ -0,0 +1,188 @@
+import Route from "./route";
+import CancellationToken from "./cancellation-token";
+
+/**
+ * A single route search, such as point-to-point path-finding between one pair of origin and destination bus stops. The
+ * search should stop when the given token is cancelled.
+ */
+export type RouteSearch = (cancellation: CancellationToken) => Promise<Route>;
+
+/**
+ * The result of an anytime route search
+ */
+export interface AnytimeSearchResult {
+    /**
+     * The best diverse routes found, ranked by travel time
+     */
+    routes: Route[]
+    /**
+     * Whether every search finished before the deadline
+     */
+    complete: boolean
+    /**
+     * The number of searches that finished before the deadline, whether or not they found a route
+     */
+    searchesFinished: number
+    /**
+     * The time taken, in milliseconds
+     */
+    elapsed: number
+}
+
+/**
+ * Finds up to k diverse alternative routes within a deadline
+ *
+ * Searches are given in phases, cheapest and most promising first. All the searches of a phase run concurrently, and
+ * every route is ranked as soon as its search finishes, so there is always a best-so-far answer. When a phase finishes
+ * with time to spare, the next phase is started to improve on it. When the deadline passes, the routes found so far are
+ * returned, and the searches still running are cancelled (see {@link CancellationToken}) and their routes ignored.
+ *
+ * Two routes are considered alternatives only if they do not share too much of their journey (see {@link overlap}).
+ * Of two routes that are too similar, only the faster one is kept.
+ */
+class AnytimeSearch {
+
+    /**
+     * All of the routes found so far
+     */
+    private readonly found: Route[] = [];
+
+    /**
+     * Constructs a new AnytimeSearch
+     * @param k The maximum number of alternative routes to return
+     * @param deadline The time limit of the search, in milliseconds
+     * @param maxOverlap The largest overlap (see {@link overlap}) allowed between two alternatives, from 0 to 1
+     */
+    constructor(private readonly k: number, private readonly deadline: number, private readonly maxOverlap: number = 0.5) {
+    }
+
+    /**
+     * Runs the searches, phase by phase, until they have all finished or the deadline has passed
+     * @param phases The searches of each phase
+     * @returns The best diverse routes found in time
+     */
+    public async run(phases: RouteSearch[][]) : Promise<AnytimeSearchResult> {
+
+        const start = Date.now();
+        let searchesFinished = 0;
+        let expired = false;
+        let timer : any = null;
+        const cancellation = new CancellationToken();
+
+        const deadlinePassed = new Promise<void>(resolve => {
+            timer = setTimeout(() => {
+                expired = true;
+                cancellation.cancel();
+                resolve();
+            }, this.deadline);
+        });
+
+        for(let phase of phases) {
+
+            const searches = phase.map(search => search(cancellation).then(route => {
+                if(!expired) {
+                    searchesFinished += 1;
+                    this.offer(route);
+                }
+            }, _e => {
+                if(!expired) searchesFinished += 1;
+            }));
+
+            await Promise.race([Promise.all(searches), deadlinePassed]);
+
+            if(expired) break;
+        }
+
+        clearTimeout(timer);
+
+        return {
+            routes: this.getRoutes(),
+            complete: !expired,
+            searchesFinished: searchesFinished,
+            elapsed: Date.now() - start
+        };
+    }
+
+    /**
+     * Ranks a route against the routes found so far
+     * @param route The route found
+     * @returns Whether the route is one of the best routes found so far
+     */
+    public offer(route: Route) : boolean {
+
+        this.found.push(route);
+        return this.getRoutes().indexOf(route) >= 0;
+    }
+
+    /**
+     * Gets the best diverse routes found so far
+     *
+     * The routes are taken fastest first, skipping any route that is too similar to a faster route already taken,
+     * until k routes have been taken. This does not depend on the order in which the routes were found.
+     *
+     * @returns The routes, ranked by travel time
+     */
+    public getRoutes() : Route[] {
+
+        const ranked = this.found.slice().sort((routeA, routeB) => routeA.travelTime - routeB.travelTime);
+        const routes : Route[] = [];
+
+        for(let route of ranked) {
+            if(routes.length >= this.k) break;
+            if(routes.every(taken => AnytimeSearch.overlap(route, taken) <= this.maxOverlap)) routes.push(route);
+        }
+
+        return routes;
+    }
+
+    /**
+     * Measures how much of their journey two routes share
+     *
+     * Each route is described by the bus stops it travels from, together with the bus service it takes from each of
+     * them. The overlap is the number of these the routes share, divided by the number of distinct ones in either route
+     * (i.e., the Jaccard similarity), so identical routes have an overlap of 1 and routes with nothing in common have an
+     * overlap of 0.
+     *
+     * @param routeA The first route
+     * @param routeB The second route
+     */
+    public static overlap(routeA: Route, routeB: Route) : number {
+
+        const legsA = AnytimeSearch.legs(routeA);
+        const legsB = AnytimeSearch.legs(routeB);
+
+        let shared = 0;
+        let total = 0;
+
+        for(let leg in legsA) {
+            total += 1;
+            if(legsB.hasOwnProperty(leg)) shared += 1;
+        }
+
+        for(let leg in legsB) {
+            if(!legsA.hasOwnProperty(leg)) total += 1;
+        }
+
+        return total == 0 ? 1 : shared / total;
+    }
+
+    /**
+     * Describes each bus stop of a route by the bus service used to travel from it
+     * @param route The route
+     */
+    private static legs(route: Route) : {[key: string]: boolean} {
+
+        const legs : {[key: string]: boolean} = {};
+
+        for(let segment of route.segments) {
+            for(let i = 0; i < segment.busStops.length - 1; i++) {
+                legs[`${segment.busService.ServiceNo}_${segment.busService.Direction}:${segment.busStops[i].BusStopCode}`] = true;
+            }
+        }
+
+        return legs;
+    }
+
+}
+
+export default AnytimeSearch;
@@ -0,0 +1,42 @@
+/**
+ * A flag that tells a route search to stop, e.g. when its route is no longer needed because the deadline of an
+ * {@link AnytimeSearch} has passed
+ *
+ * Path-finding cannot be interrupted while it is running, so a search checks the flag between its database queries and
+ * stops at the next check after it has been cancelled.
+ */
+class CancellationToken {
+
+    /**
+     * Whether the search has been cancelled
+     */
+    private cancelled = false;
+
+    /**
+     * Tells the search to stop
+     */
+    public cancel() : void {
+
+        this.cancelled = true;
+    }
+
+    /**
+     * Checks whether the search has been cancelled
+     */
+    public isCancelled() : boolean {
+
+        return this.cancelled;
+    }
+
+    /**
+     * Stops the search if it has been cancelled
+     * @throws Error If the search has been cancelled
+     */
+    public throwIfCancelled() : void {
+
+        if(this.cancelled) throw new Error(`Search cancelled`);
+    }
+
+}
+
+export default CancellationToken;
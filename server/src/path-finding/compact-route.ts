@@ -0,0 +1,206 @@
+import express from 'express';
+import Route from "./route";
+
+/**
+ * The media type of the compact binary route encoding. Clients opt in to the encoding by listing this media type in
+ * the Accept header of a /findroute request, with the version they can decode as its {@code v} parameter (see
+ * {@link compactRouteMediaType}). The bare media type stands for {@link COMPACT_ROUTE_VERSION_WITHOUT_PATHS}, which is
+ * all that the first clients to support the encoding can decode.
+ */
+export const COMPACT_ROUTE_MEDIA_TYPE = "application/vnd.ezroute.compact-route";
+
+/**
+ * The first version of the compact binary route encoding, which has no paths
+ */
+export const COMPACT_ROUTE_VERSION_WITHOUT_PATHS = 1;
+
+/**
+ * The version of the compact binary route encoding
+ */
+export const COMPACT_ROUTE_VERSION = 2;
+
+/**
+ * The version of the compact binary route encoding that holds a number of alternative routes
+ */
+export const COMPACT_ROUTES_VERSION = 3;
+
+/**
+ * Gets the media type of a version of the compact binary route encoding
+ * @param version The version of the encoding
+ * @returns The bare media type for {@link COMPACT_ROUTE_VERSION_WITHOUT_PATHS}, or the media type with a {@code v}
+ * parameter for later versions, e.g. "application/vnd.ezroute.compact-route;v=2"
+ */
+export function compactRouteMediaType(version: number): string {
+
+    return version == COMPACT_ROUTE_VERSION_WITHOUT_PATHS ? COMPACT_ROUTE_MEDIA_TYPE :
+        `${COMPACT_ROUTE_MEDIA_TYPE};v=${version}`;
+}
+
+/**
+ * Picks the version of the compact binary route encoding to respond with
+ *
+ * The bare media type in the Accept header of a client matches every versioned media type, so each version is first
+ * checked against the bare media type: only a client that lists the version's {@code v} parameter itself gets it. Of
+ * the versions the client lists, the highest is picked, as long as the client does not prefer JSON to it.
+ *
+ * @param request The HTTP Request
+ * @param versions The versions that the response can be encoded in
+ * @returns The version, or 0 if the response should be JSON
+ */
+export function acceptedCompactRouteVersion(request: express.Request, versions: number[]): number {
+
+    const highestFirst = versions.slice().sort((a, b) => b - a);
+
+    for(let version of highestFirst) {
+
+        const mediaType = compactRouteMediaType(version);
+
+        if(version != COMPACT_ROUTE_VERSION_WITHOUT_PATHS &&
+            request.accepts([COMPACT_ROUTE_MEDIA_TYPE, mediaType]) !== mediaType) continue;
+
+        if(request.accepts(['application/json', mediaType]) === mediaType) return version;
+    }
+
+    return 0;
+}
+
+/**
+ * Encodes a route in the compact binary route encoding
+ *
+ * The app only displays the bus service number, the first and last bus stop, the number of bus stops and the path on
+ * the map of each segment, so only those are encoded. All strings are stored once in a string table and referred to by
+ * their index, and all integers are stored as unsigned LEB128 varints:
+ *
+ * {@code version} (1 byte)
+ * {@code stringCount}, followed by {@code stringCount} strings, each as {@code byteLength} and its UTF-8 bytes
+ * {@code segmentCount}, followed by {@code segmentCount} segments, each as {@code serviceNo}, {@code firstStop} and
+ * {@code lastStop} string indices, {@code stopCount}, and {@code path}
+ *
+ * {@code path} is one more than the string index of the bus stop locations as an encoded polyline (see
+ * {@link encodePolyline}), or 0 if a bus stop has no location. {@link COMPACT_ROUTE_VERSION_WITHOUT_PATHS} has no
+ * {@code path}.
+ *
+ * Walking segments are encoded like any other segment, with {@link WALKING_SERVICE_NO} as their {@code serviceNo}.
+ *
+ * @param route The route to encode
+ * @param version The version of the encoding, either {@link COMPACT_ROUTE_VERSION} or
+ * {@link COMPACT_ROUTE_VERSION_WITHOUT_PATHS}
+ */
+export function encodeCompactRoute(route: Route, version: number = COMPACT_ROUTE_VERSION): Buffer {
+
+    return encodeCompact(version, [route], false);
+}
+
+/**
+ * Encodes a ranked list of alternative routes in the compact binary route encoding
+ *
+ * The routes share one string table, and {@code segmentCount} and the segments of a single route (see
+ * {@link encodeCompactRoute}) are replaced by:
+ *
+ * {@code routeCount}, followed by {@code routeCount} routes, each as {@code travelTime} in whole minutes, then
+ * {@code segmentCount} and its segments
+ *
+ * @param routes The routes to encode, best first
+ */
+export function encodeCompactRoutes(routes: Route[]): Buffer {
+
+    return encodeCompact(COMPACT_ROUTES_VERSION, routes, true);
+}
+
+/**
+ * Encodes routes with a shared string table
+ * @param version The version of the encoding
+ * @param routes The routes to encode
+ * @param withRouteHeaders Whether to write the number of routes and the travel time of each route
+ */
+function encodeCompact(version: number, routes: Route[], withRouteHeaders: boolean): Buffer {
+
+    const bytes: number[] = [version];
+    const strings: string[] = [];
+    const stringIndices: {[key: string]: number} = {};
+
+    const writeVarint = (value: number) => {
+        while(value > 0x7f) {
+            bytes.push((value & 0x7f) | 0x80);
+            value = Math.floor(value / 128);
+        }
+        bytes.push(value);
+    };
+
+    const indexOf = (value: String) : number => {
+        const key = String(value);
+        if(!stringIndices.hasOwnProperty(key)) {
+            stringIndices[key] = strings.length;
+            strings.push(key);
+        }
+        return stringIndices[key];
+    };
+
+    const withPaths = version != COMPACT_ROUTE_VERSION_WITHOUT_PATHS;
+
+    const encodedRoutes = routes.map(route => route.segments.map(segment => {
+        const fields = [
+            indexOf(segment.busService.ServiceNo),
+            indexOf(segment.busStops[0].Description),
+            indexOf(segment.busStops[segment.busStops.length - 1].Description),
+            segment.busStops.length
+        ];
+        if(withPaths) {
+            fields.push(segment.busStops.every(stop => stop.Location && stop.Location.coordinates.length >= 2) ?
+                indexOf(encodePolyline(segment.busStops.map(stop => stop.Location.coordinates as number[]))) + 1 : 0);
+        }
+        return fields;
+    }));
+
+    writeVarint(strings.length);
+    strings.forEach(value => {
+        const utf8 = Buffer.from(value, "utf8");
+        writeVarint(utf8.length);
+        utf8.forEach(b => bytes.push(b));
+    });
+
+    if(withRouteHeaders) writeVarint(routes.length);
+
+    encodedRoutes.forEach((segments, i) => {
+        if(withRouteHeaders) writeVarint(Math.max(0, Math.round(routes[i].travelTime)));
+        writeVarint(segments.length);
+        segments.forEach(fields => fields.forEach(writeVarint));
+    });
+
+    return Buffer.from(bytes);
+}
+
+/**
+ * Encodes a list of GPS coordinates in the Encoded Polyline Algorithm Format used by Google Maps
+ *
+ * Each coordinate is stored as the difference from the previous coordinate, at a precision of 1e-5 degrees.
+ *
+ * @param coordinates The coordinates, each as [longitude, latitude] as in GeoJSON
+ * @see https://developers.google.com/maps/documentation/utilities/polylinealgorithm
+ */
+export function encodePolyline(coordinates: number[][]): string {
+
+    let encoded = "";
+    let previousLat = 0;
+    let previousLong = 0;
+
+    const encodeValue = (value: number) => {
+        value = value < 0 ? ~(value << 1) : value << 1;
+        while(value >= 0x20) {
+            encoded += String.fromCharCode((0x20 | (value & 0x1f)) + 63);
+            value >>= 5;
+        }
+        encoded += String.fromCharCode(value + 63);
+    };
+
+    coordinates.forEach(([long, lat]) => {
+        const roundedLat = Math.round(lat * 1e5);
+        const roundedLong = Math.round(long * 1e5);
+        encodeValue(roundedLat - previousLat);
+        encodeValue(roundedLong - previousLong);
+        previousLat = roundedLat;
+        previousLong = roundedLong;
+    });
+
+    return encoded;
+}
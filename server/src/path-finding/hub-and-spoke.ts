@@ -11,6 +11,7 @@ import BusRouteStops from "../bus-route-stops/bus-route-stops.interface";
 import ServiceTimeInformation from "../bus-service/service-time-information.interface";
 import RouteSegment from "./route-segment";
 import * as util from "util";
+import CancellationToken from "./cancellation-token";
 const readline = require('readline');
 
 /**
@@ -93,8 +94,10 @@ class HubAndSpoke {
      * @param origin The unique code of the origin bus stop
      * @param destination The unique code of the destination bus stop
      * @param now The current date and time for route-finding purposes
+     * @param cancellation The token that stops the search between its database queries
      */
-    private static async generateHubAndSpokeGraph(origin : string, destination: string, now : Date = new Date()) : Promise<any> {
+    private static async generateHubAndSpokeGraph(origin : string, destination: string, now : Date,
+                                                  cancellation : CancellationToken) : Promise<any> {
 
         /* Include connections from the origin bus stop to its hubs - the destination bus stops of all the bus services
            that service the bus stop.
@@ -112,11 +115,15 @@ class HubAndSpoke {
             SegmentType: "hubtospoke"
         });
 
+        cancellation.throwIfCancelled();
+
         /* Include the connections between hubs (i.e., bus interchanges and termini) */
         const hubToHubSegments = await busSegmentModel.find({
             SegmentType: "hubtohub"
         });
 
+        cancellation.throwIfCancelled();
+
         const graph : any = {};
 ;
         const addSegments = (segments : BusSegment[]) => {
@@ -145,10 +152,12 @@ class HubAndSpoke {
      * @param originBusStop The unique code of the origin bus stop
      * @param destinationBusStop The unique code of the destination bus stop
      * @param now The current date and time, for route-finding purposes
+     * @param cancellation The token that stops the search between its database queries
      */
-    public static async findHubAndSpokeRoute(originBusStop: string, destinationBusStop: string, now : Date = new Date()) : Promise<Route> {
+    public static async findHubAndSpokeRoute(originBusStop: string, destinationBusStop: string, now : Date = new Date(),
+                                             cancellation : CancellationToken = new CancellationToken()) : Promise<Route> {
 
-        const graph = await HubAndSpoke.generateHubAndSpokeGraph(originBusStop, destinationBusStop, now);
+        const graph = await HubAndSpoke.generateHubAndSpokeGraph(originBusStop, destinationBusStop, now, cancellation);
 
         const path = graph.path(originBusStop, destinationBusStop);
 
@@ -162,6 +171,8 @@ class HubAndSpoke {
          */
         for(let i = 0; i < path.length - 1; i++) {
 
+            cancellation.throwIfCancelled();
+
             const stop_i = path[i];
             const stop_i1 = path[i+1];
 
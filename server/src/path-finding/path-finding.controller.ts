@@ -8,6 +8,17 @@ import HubAndSpoke from "./hub-and-spoke";
 import LTAApi from "../lta/lta.api";
 import config from "../config";
 import BusArrival from "../bus-arrival/bus-arrival.interface";
+import {
+    acceptedCompactRouteVersion,
+    COMPACT_ROUTE_VERSION,
+    COMPACT_ROUTE_VERSION_WITHOUT_PATHS,
+    COMPACT_ROUTES_VERSION,
+    compactRouteMediaType,
+    encodeCompactRoute,
+    encodeCompactRoutes
+} from "./compact-route";
+import AnytimeSearch, {RouteSearch} from "./anytime-search";
+import {addWaitingTime, firstBusSegment} from "./waiting-time";
 
 /**
  * A controller that handles path-finding requests
@@ -18,6 +29,21 @@ class PathFindingController implements ControllerInterface {
      */
     public readonly router: express.Router = express.Router();
 
+    /**
+     * The largest number of alternative routes that can be requested
+     */
+    private static readonly MAX_ALTERNATIVES = 5;
+
+    /**
+     * The deadline of a search for alternative routes when none is requested, in milliseconds
+     */
+    private static readonly DEFAULT_DEADLINE = 150;
+
+    /**
+     * The longest deadline of a search for alternative routes that can be requested, in milliseconds
+     */
+    private static readonly MAX_DEADLINE = 10000;
+
     /**
      * Constructs a new PathFindingController
      */
@@ -41,12 +67,13 @@ class PathFindingController implements ControllerInterface {
      *
      * @param origin The unique code of the origin bus stop
      * @param dest The unique code of the destination bus stop
+     * @param walking Whether the route may walk between nearby bus stops
      */
-    private static async findShortestRoute(origin : string, dest : string) : Promise<Route> {
+    private static async findShortestRoute(origin : string, dest : string, walking : boolean) : Promise<Route> {
 
         try {
             const pointToPointRoute : Route = await PointToPoint.findPointToPointRoute(
-                origin, dest
+                origin, dest, new Date(), walking
             );
 
             return pointToPointRoute;
@@ -89,6 +116,14 @@ class PathFindingController implements ControllerInterface {
      * {@code originlong}: The longitude of the origin point
      * {@code destlat}: The latitude of the destination point
      * {@code destlong}: The longitude of the destination point
+     * {@code alternatives} (optional): The number of alternative routes to return (see {@link findAlternatives})
+     * {@code deadline} (optional): The time limit of the search for alternative routes, in milliseconds
+     * {@code walking} (optional): 1 to allow routes to walk between nearby bus stops. Walking segments have the service
+     * number "Walk", which clients that do not ask for them cannot parse.
+     *
+     * The route is returned as JSON, unless the client prefers the compact binary route encoding in its Accept header
+     * (see {@link encodeCompactRoute}), in the highest version that the client lists (see
+     * {@link acceptedCompactRouteVersion}). Errors are always returned as JSON.
      *
      * @param request The HTTP Request
      * @param response The HTTP Response
@@ -142,6 +177,18 @@ class PathFindingController implements ControllerInterface {
             return;
         }
 
+        const walking : boolean = request.query.walking === "1";
+        const alternatives : number = parseInt(request.query.alternatives);
+
+        if(!isNaN(alternatives)) {
+            const deadline : number = parseInt(request.query.deadline);
+            await PathFindingController.findAlternatives(request, response, api, originBusStops, destBusStops,
+                Math.min(Math.max(alternatives, 1), PathFindingController.MAX_ALTERNATIVES),
+                isNaN(deadline) ? PathFindingController.DEFAULT_DEADLINE :
+                    Math.min(Math.max(deadline, 0), PathFindingController.MAX_DEADLINE), walking);
+            return;
+        }
+
         const getArrivalTimesWithBusStopCode = async (code : string) => {
 
             return {
@@ -174,7 +221,8 @@ class PathFindingController implements ControllerInterface {
 
                 try {
                     //console.log(`Trying ${originBusStop.BusStopCode} (${originBusStop.Description})...`);
-                    const route = await PathFindingController.findShortestRoute(originBusStop.BusStopCode as string, destBusStop.BusStopCode as string);
+                    const route = await PathFindingController.findShortestRoute(originBusStop.BusStopCode as string, destBusStop.BusStopCode as string,
+                        walking);
                     possibleRoutes.push(route);
 
                 } catch(e) {
@@ -191,6 +239,23 @@ class PathFindingController implements ControllerInterface {
             return;
         }
 
+        /* Routes that start with a walk board their first bus at another bus stop */
+        const busStopsFetched : {[key: string]: boolean} = {};
+
+        for(let i = 0; i < 3 && i < originBusStops.length; i++) {
+            busStopsFetched[originBusStops[i].BusStopCode as string] = true;
+        }
+
+        possibleRoutes.forEach(route => {
+            const busSegment = firstBusSegment(route);
+            const code = busSegment && busSegment.busStops[0].BusStopCode as string;
+
+            if(code && !busStopsFetched[code]) {
+                busStopsFetched[code] = true;
+                busArrivalTimesPromise.push(getArrivalTimesWithBusStopCode(code));
+            }
+        });
+
         const busArrivalTimes : {busStopCode : string, arrivalTimes: {[key: string]: BusArrival}}[]
             = await Promise.all(busArrivalTimesPromise);
 
@@ -204,40 +269,125 @@ class PathFindingController implements ControllerInterface {
 
         const now = new Date();
 
-        possibleRoutes.forEach(route => {
+        possibleRoutes.forEach(route => addWaitingTime(route, arrivalTimesByStop, now));
+
+        const shortestRoute = possibleRoutes.sort((routeA, routeB) => {
+
+            if(routeA.travelTime < routeB.travelTime) return -1;
+            else if(routeA.travelTime == routeB.travelTime) return 0;
+            else return 1;
 
-            const firstBusStop = route.segments[0].busStops[0];
-            const firstBusService = route.segments[0].busService;
+        })[0];
 
-            try{
-                const arrivalTime =
-                    arrivalTimesByStop[firstBusStop.BusStopCode as string][firstBusService.ServiceNo as string];
+        const compactVersion = acceptedCompactRouteVersion(request,
+            [COMPACT_ROUTE_VERSION_WITHOUT_PATHS, COMPACT_ROUTE_VERSION]);
 
-                if(!arrivalTime) {
-                    route.travelTime += 10; // In the absence of arrival information, assume the worst case
-                    return;
-                }
+        if(compactVersion) {
+            response.type(compactRouteMediaType(compactVersion)).send(encodeCompactRoute(shortestRoute, compactVersion));
+            return;
+        }
+
+        response.send({'error': 'none', 'route': shortestRoute});
+    }
 
-                /* The time to wait until the bus arrives, in minutes */
-                const waitingTime = Math.floor(Math.abs(arrivalTime.EstimatedArrival.getTime() - now.getTime()) / (1000 * 60));
+    /**
+     * Finds up to k diverse alternative routes between nearby origin and destination bus stops within a deadline
+     *
+     * The search is an {@link AnytimeSearch} in three phases, so that a good route is found first and is then improved
+     * on while there is time left:
+     *
+     * 1. A point-to-point route between the nearest origin and destination bus stops
+     * 2. Point-to-point routes between the other combinations of the three nearest origin and destination bus stops
+     * 3. Hub-and-spoke routes for the combinations that have no point-to-point route
+     *
+     * The waiting time for the first bus of each route is added to its travel time as soon as the bus arrival times
+     * are known, before it is ranked. The routes are returned, best first, as JSON, or in the compact binary route
+     * encoding if the client prefers it (see {@link encodeCompactRoutes}). The JSON response also says whether the
+     * search finished before the deadline.
+     *
+     * @param request The HTTP Request
+     * @param response The HTTP Response
+     * @param api The LTA DataMall API, for bus arrival times
+     * @param originBusStops The bus stops near the origin point, nearest first
+     * @param destBusStops The bus stops near the destination point, nearest first
+     * @param k The maximum number of alternative routes to return
+     * @param deadline The time limit of the search, in milliseconds
+     * @param walking Whether the routes may walk between nearby bus stops
+     */
+    private static async findAlternatives(request: express.Request, response: express.Response, api: LTAApi,
+                                          originBusStops: BusStop[], destBusStops: BusStop[],
+                                          k: number, deadline: number, walking: boolean) {
 
-                route.travelTime += waitingTime;
+        const now = new Date();
+        const arrivalTimesByStop : {[key: string]: {[key: string]: BusArrival}} = {};
+        const arrivalTimesPromises : {[key: string]: Promise<void>} = {};
+
+        /* Fetches the bus arrival times at a bus stop, once */
+        const fetchArrivalTimes = (code : string) : Promise<void> => {
+            if(!arrivalTimesPromises[code]) {
+                arrivalTimesPromises[code] = api.getBusArrivalTimes(code).then(arrivalTimes => {
+                    arrivalTimesByStop[code] = arrivalTimes;
+                }, _e => {});
+            }
+
+            return arrivalTimesPromises[code];
+        };
+
+        /* Most routes board their first bus at an origin bus stop, so these are fetched while searching */
+        for(let i = 0; i < 3 && i < originBusStops.length; i++) {
+            fetchArrivalTimes(originBusStops[i].BusStopCode as string);
+        }
+
+        /* Point-to-point routes found for each combination of origin and destination bus stop */
+        const pointToPointFound : {[key: string]: boolean} = {};
+
+        const withWaitingTime = (route : Route) : Promise<Route> => {
+            const busSegment = firstBusSegment(route);
+            return (busSegment ? fetchArrivalTimes(busSegment.busStops[0].BusStopCode as string) : Promise.resolve())
+                .then(() => {
+                    addWaitingTime(route, arrivalTimesByStop, now);
+                    return route;
+                });
+        };
 
-            } catch(_e) {
-                route.travelTime += 10;
+        const pointToPoint = (origin : string, dest : string) : RouteSearch => cancellation =>
+            PointToPoint.findPointToPointRoute(origin, dest, now, walking, cancellation).then(route => {
+                pointToPointFound[`${origin}_${dest}`] = true;
+                return withWaitingTime(route);
+            });
+
+        const hubAndSpoke = (origin : string, dest : string) : RouteSearch => cancellation =>
+            pointToPointFound[`${origin}_${dest}`] ? Promise.reject(new Error(`Already have a point-to-point route`)) :
+                HubAndSpoke.findHubAndSpokeRoute(origin, dest, now, cancellation).then(withWaitingTime);
+
+        const phases : RouteSearch[][] = [[], [], []];
+
+        for(let i = 0; i < 3 && i < originBusStops.length; i++) {
+            for(let j = 0; j < 3 && j < destBusStops.length; j++) {
+                const origin = originBusStops[i].BusStopCode as string;
+                const dest = destBusStops[j].BusStopCode as string;
+
+                phases[i == 0 && j == 0 ? 0 : 1].push(pointToPoint(origin, dest));
+                phases[2].push(hubAndSpoke(origin, dest));
             }
+        }
 
-        });
+        const result = await new AnytimeSearch(k, deadline).run(phases);
 
-        const shortestRoute = possibleRoutes.sort((routeA, routeB) => {
+        console.log(`${new Date().toISOString()}: Found ${result.routes.length} alternative routes in ${result.elapsed} ms ` +
+            `(${result.searchesFinished} searches finished, ${result.complete ? 'complete' : 'deadline reached'})`);
 
-            if(routeA.travelTime < routeB.travelTime) return -1;
-            else if(routeA.travelTime == routeB.travelTime) return 0;
-            else return 1;
+        if(result.routes.length == 0) {
+            response.send({'error': 'Unable to find a route to your destination'});
+            return;
+        }
 
-        })[0];
+        if(acceptedCompactRouteVersion(request, [COMPACT_ROUTES_VERSION])) {
+            response.type(compactRouteMediaType(COMPACT_ROUTES_VERSION)).send(encodeCompactRoutes(result.routes));
+            return;
+        }
 
-        response.send({'error': 'none', 'route': shortestRoute});
+        response.send({'error': 'none', 'routes': result.routes, 'complete': result.complete});
     }
 }
 
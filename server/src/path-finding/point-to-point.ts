@@ -8,6 +8,11 @@ import busServiceModel from "../bus-service/bus-service.model";
 import RouteSegment from "./route-segment";
 import busRouteStopsModel from "../bus-route-stops/bus-route-stops.model";
 import BusRouteStops from "../bus-route-stops/bus-route-stops.interface";
+import BusStop from "../bus-stop/bus-stop.interface";
+import BusService from "../bus-service/bus-service.interface";
+import {WALKING_SERVICE_NO} from "./route-segment";
+import FootpathTable from "../footpath/footpath-table";
+import CancellationToken from "./cancellation-token";
 
 /**
  * A class to perform point-to-point path-finding between bus stops
@@ -23,6 +28,10 @@ import BusRouteStops from "../bus-route-stops/bus-route-stops.interface";
  * fails to find a path at all. If we do find a path here, it is usually better than the path produced by the hub-and-spoke
  * method.
  *
+ * If the client asks for them, the graph also contains the walking transfers (see {@link FootpathTable}) between its bus
+ * stops, so that a route can transfer to a bus stop across the road rather than only at a bus stop shared by both bus
+ * services.
+ *
  */
 class PointToPoint {
 
@@ -88,10 +97,14 @@ class PointToPoint {
      * @param origin The unique code for the origin bus stop
      * @param destination The unique code for the destination bus stop
      * @param now The current date and time, for route-finding purposes
-     * @returns A object containing the Dijkstra graph, as well as all of the bus services that satisfy the point-to-point
-     * path-finding criteria (i.e., lead from the origin and to the destination)
+     * @param walking Whether to add the walking transfers between the bus stops of the graph
+     * @param cancellation The token that stops the search between its database queries
+     * @returns A object containing the Dijkstra graph, all of the bus services that satisfy the point-to-point
+     * path-finding criteria (i.e., lead from the origin and to the destination), and the walking time of each walking
+     * transfer in the graph, by the codes of its bus stops (e.g. "17091_17099")
      */
-    private static async generatePointToPointGraph(origin: string, destination: string, now : Date = new Date()) : Promise<any> {
+    private static async generatePointToPointGraph(origin: string, destination: string, now : Date, walking : boolean,
+                                                   cancellation : CancellationToken) : Promise<any> {
 
         const originSegments = (await busSegmentModel.find({
             OriginCode: origin,
@@ -109,6 +122,8 @@ class PointToPoint {
 
         for(let segment of originSegments) {
 
+            cancellation.throwIfCancelled();
+
             /* We encode the bus services in this format because it can be directly used in a MongoDB query
                for the BusRouteStops object corresponding to the entire bus route.
              */
@@ -138,6 +153,8 @@ class PointToPoint {
 
         for(let segment of destinationSegments) {
 
+            cancellation.throwIfCancelled();
+
             servicesToDestination.push({
                 "Service.ServiceNo": segment.ServiceNo,
                 "Service.Direction": segment.Direction,
@@ -162,9 +179,37 @@ class PointToPoint {
 
         }
 
+        const walkingEdges : {[key: string]: number} = {};
+
+        /* Add the walking transfers between the bus stops in the graph, where walking is quicker than the bus */
+        if(walking) {
+
+            const footpathTable = await FootpathTable.load();
+            cancellation.throwIfCancelled();
+
+            for(let code in graph) {
+
+                if(!graph.hasOwnProperty(code)) continue;
+
+                for(let footpath of footpathTable.footpathsFrom(code)) {
+
+                    if(!graph.hasOwnProperty(footpath.BusStopCode)) continue;
+                    if(graph[code].hasOwnProperty(footpath.BusStopCode) &&
+                        graph[code][footpath.BusStopCode] <= footpath.walkingTime) continue;
+
+                    graph[code][footpath.BusStopCode] = footpath.walkingTime;
+                    walkingEdges[`${code}_${footpath.BusStopCode}`] = footpath.walkingTime;
+
+                }
+
+            }
+
+        }
+
         return {
             graph: new Graph(graph),
-            servicesToDestination: servicesToDestination
+            servicesToDestination: servicesToDestination,
+            walkingEdges: walkingEdges
         };
 
     }
@@ -174,10 +219,16 @@ class PointToPoint {
      * @param originBusCode The unique code of the origin bus stop
      * @param destinationBusCode The unique code of the destination bus stop
      * @param now The current date and time, for route-finding purposes
+     * @param walking Whether the route may walk between nearby bus stops. Walking segments have the service number
+     * {@link WALKING_SERVICE_NO}, which clients that do not ask for them cannot parse.
+     * @param cancellation The token that stops the search between its database queries
      */
-    public static async findPointToPointRoute(originBusCode: string, destinationBusCode: string, now : Date = new Date()) : Promise<Route> {
+    public static async findPointToPointRoute(originBusCode: string, destinationBusCode: string, now : Date = new Date(),
+                                              walking : boolean = false,
+                                              cancellation : CancellationToken = new CancellationToken()) : Promise<Route> {
 
-        const graph = await PointToPoint.generatePointToPointGraph(originBusCode, destinationBusCode, now);
+        const graph = await PointToPoint.generatePointToPointGraph(originBusCode, destinationBusCode, now, walking,
+            cancellation);
 
         const result = graph.graph.path(originBusCode, destinationBusCode, { cost: true});
 
@@ -188,18 +239,42 @@ class PointToPoint {
             throw new Error(`No such path`);
         }
 
-        const segments : RouteSegment[] = [];
+        cancellation.throwIfCancelled();
 
         /* Get details of all bus routes that can be used to traverse the path */
         const serviceRoutes = await busRouteStopsModel.find({
             $or: graph.servicesToDestination
         });
 
+        const segments = PointToPoint.segmentsAlongPath(path, serviceRoutes, graph.walkingEdges);
+        const busSegmentCount = segments.filter(segment => !segment.walking).length;
+
+        return {
+            segments: segments,
+            travelTime: cost + (Math.max(busSegmentCount - 1, 0) * 5) // Transfer penalty
+        };
+
+    }
+
+    /**
+     * Finds the bus services and walking transfers to take to traverse a path of bus stops
+     * @param path The unique codes of the bus stops of the path, from the origin to the destination
+     * @param serviceRoutes The bus routes of all of the bus services that can be used to traverse the path
+     * @param walkingEdges The walking time of each walking transfer that can be used to traverse the path, by the codes
+     * of its bus stops (e.g. "17091_17099")
+     * @returns The segments of the route, in order
+     */
+    public static segmentsAlongPath(path: string[], serviceRoutes: BusRouteStops[],
+                                    walkingEdges: {[key: string]: number}) : RouteSegment[] {
+
+        const segments : RouteSegment[] = [];
+
         /* We find the optimal way to traverse the list of bus stops by performing a search in rounds:
 
            From the origin bus stop, we find the bus route that allows us to proceed along the path for the longest
            distance without transferring. When we get to a point where we must transfer, we start a new round with the
-           latest bus stop and repeat until we eventually arrive at the destination.
+           latest bus stop and repeat until we eventually arrive at the destination. Where the path walks to the next
+           bus stop, the round ends there, and a new round starts from the bus stop walked to.
          */
 
         /* The length of the longest bus route with no transfers in the current round */
@@ -289,6 +364,44 @@ class PointToPoint {
 
         };
 
+        /* The bus stops of the bus routes, for the walking transfers */
+        const busStopsByCode : {[key: string]: BusStop} = {};
+
+        serviceRoutes.forEach(route => route.BusStops.forEach(busStop => {
+            busStopsByCode[busStop.BusStopCode as string] = busStop;
+        }));
+
+        /* A walking transfer between two bus stops of the path */
+        const pushWalkingSegment = (fromCode : string, toCode : string) => {
+
+            const from = busStopsByCode[fromCode];
+            const to = busStopsByCode[toCode];
+
+            if(!from || !to) {
+                throw new Error(`No such route`);
+            }
+
+            const walkingService : BusService = {
+                ServiceNo: WALKING_SERVICE_NO,
+                Operator: "",
+                Direction: 0,
+                Category: "",
+                OriginCode: fromCode,
+                DestinationCode: toCode,
+                LoopDesc: ""
+            };
+
+            segments.push({
+                busService: walkingService,
+                busServiceOrigin: from,
+                busServiceDestination: to,
+                busStops: [from, to],
+                walking: true,
+                walkingTime: walkingEdges[`${fromCode}_${toCode}`]
+            });
+
+        };
+
         initRound();
 
         let stepCount = 0;
@@ -298,6 +411,17 @@ class PointToPoint {
             const stop_i = path[stopNo];
             const stop_i1 = path[stopNo + 1];
 
+            /* If the path walks to the next stop, we finish the bus segment of the round so far and walk */
+            if(walkingEdges.hasOwnProperty(`${stop_i}_${stop_i1}`)) {
+
+                if(maxSegmentLength.route) pushSegment(maxSegmentLength.route);
+                pushWalkingSegment(stop_i, stop_i1);
+                stopNo += 1;
+                initRound();
+                stepCount = 0;
+                continue;
+            }
+
             haveStepped = false;
 
             //console.log(`Step ${stepCount}:`);
@@ -351,14 +475,11 @@ class PointToPoint {
         }
 
         /* When we reach the destination we will exit the while loop, but haveStepped will be true. We finalize things
-           by pushing the current portion of the route under consideration.
+           by pushing the current portion of the route under consideration, unless the route ends with a walk.
          */
-        pushSegment(maxSegmentLength.route);
+        if(maxSegmentLength.route) pushSegment(maxSegmentLength.route);
 
-        return {
-            segments: segments,
-            travelTime: cost + ((segments.length - 1 ) * 5) // Transfer penalty
-        };
+        return segments;
 
     }
 
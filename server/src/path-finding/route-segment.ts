@@ -1,17 +1,35 @@
 import BusService from "../bus-service/bus-service.interface";
 import BusStop from "../bus-stop/bus-stop.interface";
 
+/**
+ * The bus service number of walking segments. Clients that do not know about walking segments show it in place of a
+ * bus service number.
+ */
+export const WALKING_SERVICE_NO = "Walk";
+
 /**
  * A segment of a calculated bus route
  *
  * A segment refers to a portion of the bus route which can be completed by traveling on one bus service between the
  * origin and destination bus stops.
+ *
+ * A walking segment is a walking transfer between two nearby bus stops (see {@link FootpathTable}). Its bus service
+ * has the bus service number {@link WALKING_SERVICE_NO}, its bus service origin and destination are the two bus
+ * stops, and its bus stops are the two bus stops.
  */
 interface RouteSegment {
     busService : BusService
     busServiceOrigin: BusStop
     busServiceDestination: BusStop
     busStops: BusStop[]
+    /**
+     * Whether the segment is walked rather than traveled on a bus
+     */
+    walking?: boolean
+    /**
+     * The time to walk a walking segment, in minutes
+     */
+    walkingTime?: number
 }
 
-export default RouteSegment;
\ No newline at end of file
+export default RouteSegment;
@@ -0,0 +1,79 @@
+import Route from "./route";
+import RouteSegment from "./route-segment";
+import BusArrival from "../bus-arrival/bus-arrival.interface";
+
+/**
+ * The time assumed to wait for a bus when its arrival time is not known, in minutes
+ */
+export const WORST_CASE_WAITING_TIME = 10;
+
+/**
+ * Finds the first segment of a route that is traveled on a bus, rather than walked
+ * @param route The route
+ * @returns The segment, or null if the whole route is walked
+ */
+export function firstBusSegment(route: Route): RouteSegment | null {
+
+    for(let segment of route.segments) {
+        if(!segment.walking) return segment;
+    }
+
+    return null;
+}
+
+/**
+ * Finds the time spent walking before the first bus of a route
+ * @param route The route
+ * @returns The walking time, in minutes
+ */
+export function walkingTimeToFirstBus(route: Route): number {
+
+    let walkingTime = 0;
+
+    for(let segment of route.segments) {
+        if(!segment.walking) break;
+        walkingTime += segment.walkingTime || 0;
+    }
+
+    return walkingTime;
+}
+
+/**
+ * Adds the time to wait for the first bus of a route to its travel time
+ *
+ * If the route starts with a walk to another bus stop, the first bus is the one at the bus stop walked to, and the
+ * wait starts when the walk ends. Only the next bus of each service is known, so if it leaves before the walk ends,
+ * or its arrival time is not known, the worst case is assumed.
+ *
+ * @param route The route
+ * @param arrivalTimesByStop The bus arrival times at each bus stop, by bus service number
+ * @param now The current date and time
+ */
+export function addWaitingTime(route: Route, arrivalTimesByStop: {[key: string]: {[key: string]: BusArrival}},
+                               now: Date) {
+
+    const busSegment = firstBusSegment(route);
+
+    if(!busSegment) return;
+
+    const arrivalTimes = arrivalTimesByStop[busSegment.busStops[0].BusStopCode as string];
+    const arrivalTime = arrivalTimes && arrivalTimes[busSegment.busService.ServiceNo as string];
+
+    if(!arrivalTime) {
+        route.travelTime += WORST_CASE_WAITING_TIME;
+        return;
+    }
+
+    const walkingTime = walkingTimeToFirstBus(route);
+
+    /* The time from now until the bus arrives, in minutes */
+    const timeToArrival = (arrivalTime.EstimatedArrival.getTime() - now.getTime()) / (1000 * 60);
+
+    if(walkingTime > 0 && timeToArrival < walkingTime) {
+        route.travelTime += WORST_CASE_WAITING_TIME; // The bus leaves before the walk ends
+        return;
+    }
+
+    /* The time to wait at the bus stop until the bus arrives, in minutes */
+    route.travelTime += Math.floor(Math.abs(timeToArrival - walkingTime));
+}
@@ -0,0 +1,31 @@
+const mongoose = require('mongoose');
+import config from './config';
+import busSegmentModel from "./bus-segment/bus-segment.model";
+import busRouteStopsModel from "./bus-route-stops/bus-route-stops.model";
+import HubAndSpoke from "./path-finding/hub-and-spoke";
+
+mongoose.connect(config.mongodb_url);
+
+// Generate the bus route descriptions and the spoke-to-hub / hub-to-spoke segments from the bus stops, services, and
+// fine-grain segments already in the database, e.g. after loading an offline snapshot. The snapshot already has the
+// hub-to-hub segments, so only their bus route descriptions are saved. Anything generated by an earlier run is
+// replaced, so this can be run again after loading a newer snapshot.
+Promise.all([
+    busRouteStopsModel.deleteMany({}),
+    busSegmentModel.deleteMany({SegmentType: {$in: ["spoketohub", "hubtospoke"]}})
+]).then(_ => Promise.all([
+    HubAndSpoke.generateHubToHubSegments(),
+    HubAndSpoke.generateSpokeToHubToSpokeSegments()
+])).then(([hubToHubSegments, spokeToHubToSpokeSegments]) => {
+
+    return busSegmentModel.insertMany(spokeToHubToSpokeSegments).then(_ => {
+        console.log(`\nSaved the bus route descriptions of ${hubToHubSegments.length} hub-to-hub segments`);
+        console.log(`Saved ${spokeToHubToSpokeSegments.length} spoke-to-hub / hub-to-spoke segments`);
+        mongoose.disconnect();
+    });
+
+}).catch(failure => {
+    console.error(failure);
+    mongoose.disconnect();
+    process.exit(1);
+});
@@ -0,0 +1,163 @@
+import 'mocha';
+import assert from "assert";
+import Route from "../src/path-finding/route";
+import AnytimeSearch, {RouteSearch} from "../src/path-finding/anytime-search";
+import {after, failAfter, route} from "./synthetic-route";
+
+/**
+ * The number of alternative routes to search for
+ */
+const K = 3;
+
+/**
+ * The deadlines to compare, in milliseconds. The last one is longer than any search takes.
+ */
+const DEADLINES = [50, 100, 150, 300, 600, 1500];
+
+/**
+ * The number of queries in the query set
+ */
+const QUERIES = 12;
+
+/**
+ * A search in the query set: how long it takes, and the route it finds, if any
+ */
+interface SearchSpec {
+    delay: number
+    route: Route | null
+}
+
+/**
+ * Creates a pseudo-random number generator, so that the query set is the same on every run
+ * @param seed The seed
+ */
+const random = (seed: number) => () => {
+    seed = (seed * 1103515245 + 12345) % 2147483648;
+    return seed / 2147483648;
+};
+
+/**
+ * Creates the fixed query set
+ *
+ * Each query is modelled on the three phases of a /findroute search for alternatives: one point-to-point search
+ * between the nearest bus stops, eight point-to-point searches between the other nearby bus stops, which often find
+ * near-copies of the same route, and nine slower hub-and-spoke searches, which find longer but different routes.
+ */
+const querySet = () : SearchSpec[][][] => {
+
+    const next = random(42);
+    const between = (min: number, max: number) => Math.floor(min + next() * (max - min));
+    const stops = (count: number) => {
+        const codes : string[] = [];
+        for(let i = 0; i < count; i++) codes.push(String(between(10000, 99999)));
+        return codes;
+    };
+
+    const queries : SearchSpec[][][] = [];
+
+    for(let q = 0; q < QUERIES; q++) {
+
+        const base = between(25, 60);
+        const nearest = route(base, [String(between(1, 200)), stops(between(4, 12))]);
+
+        const pointToPoint : SearchSpec[] = [];
+        for(let i = 0; i < 8; i++) {
+            const found = next();
+            let alternative : Route | null = null;
+            if(found < 0.4) {
+                /* The same bus service from a neighbouring bus stop */
+                const segment = nearest.segments[0];
+                alternative = route(base + between(-3, 8), [String(segment.busService.ServiceNo),
+                    segment.busStops.map(stop => String(stop.BusStopCode)).concat(stops(1))]);
+            } else if(found < 0.7) {
+                alternative = route(base + between(-8, 15), [String(between(1, 200)), stops(between(3, 8))],
+                    [String(between(1, 200)), stops(between(3, 8))]);
+            }
+            pointToPoint.push({delay: between(60, 250), route: alternative});
+        }
+
+        const hubAndSpoke : SearchSpec[] = [];
+        for(let i = 0; i < 9; i++) {
+            hubAndSpoke.push({
+                delay: between(200, 700),
+                route: next() < 0.9 ? route(base + between(-10, 30), [String(between(1, 200)), stops(between(5, 15))],
+                    [String(between(1, 200)), stops(between(5, 15))]) : null
+            });
+        }
+
+        queries.push([
+            [{delay: between(40, 120), route: next() < 0.85 ? nearest : null}],
+            pointToPoint,
+            hubAndSpoke
+        ]);
+    }
+
+    return queries;
+};
+
+/**
+ * Turns a query into the searches of each phase
+ */
+const searches = (query: SearchSpec[][]) : RouteSearch[][] => query.map(phase => phase.map(spec =>
+    spec.route ? after(spec.delay, spec.route) : failAfter(spec.delay)));
+
+/**
+ * Finds the best k diverse routes of a query with no deadline
+ */
+const oracle = (query: SearchSpec[][]) : Route[] => {
+
+    const search = new AnytimeSearch(K, 0);
+    query.forEach(phase => phase.forEach(spec => {
+        if(spec.route) search.offer(spec.route);
+    }));
+
+    return search.getRoutes();
+};
+
+describe("Anytime route search benchmark", function(){
+
+    it("should report solution quality versus deadline on a fixed query set", async function(){
+
+        this.timeout(30000);
+
+        const queries = querySet();
+        const best = queries.map(oracle);
+        const routable = best.filter(routes => routes.length > 0).length;
+
+        console.log(`\n${QUERIES} queries (${routable} with a route), k = ${K}`);
+        console.log("deadline (ms) | answered | travel time / best | alternatives | recall of best k | complete");
+
+        for(let deadline of DEADLINES) {
+
+            const results = await Promise.all(queries.map(query => new AnytimeSearch(K, deadline).run(searches(query))));
+
+            let answered = 0;
+            let stretch = 0;
+            let alternatives = 0;
+            let recall = 0;
+            let complete = 0;
+
+            results.forEach((result, q) => {
+                alternatives += result.routes.length;
+                if(result.complete) complete += 1;
+                if(best[q].length > 0) {
+                    recall += result.routes.filter(r => best[q].indexOf(r) >= 0).length / best[q].length;
+                }
+                if(result.routes.length > 0) {
+                    answered += 1;
+                    stretch += result.routes[0].travelTime / best[q][0].travelTime;
+                }
+            });
+
+            console.log(`${deadline} | ${answered}/${routable} | ${answered ? (stretch / answered).toFixed(3) : '-'} | ` +
+                `${(alternatives / QUERIES).toFixed(2)} | ${(recall / routable).toFixed(3)} | ${complete}/${QUERIES}`);
+
+            if(deadline == DEADLINES[DEADLINES.length - 1]) {
+                results.forEach((result, q) => assert.deepStrictEqual(result.routes.map(r => r.travelTime),
+                    best[q].map(r => r.travelTime)));
+            }
+        }
+
+    });
+
+});
@@ -0,0 +1,100 @@
+import 'mocha';
+import assert from "assert";
+import AnytimeSearch, {RouteSearch} from "../src/path-finding/anytime-search";
+import CancellationToken from "../src/path-finding/cancellation-token";
+import Route from "../src/path-finding/route";
+import {after, failAfter, route} from "./synthetic-route";
+
+describe("Anytime route search", function(){
+
+    const direct = route(30, ["96", ["A", "B", "C", "D"]]);
+    const directSlower = route(35, ["96", ["A", "B", "C", "D", "E"]]);
+    const transfer = route(40, ["2", ["A", "F"]], ["7", ["F", "D"]]);
+    const hub = route(55, ["14", ["A", "G", "H"]], ["36", ["H", "D"]]);
+
+    it("should measure the overlap of two routes", function(){
+
+        assert.strictEqual(AnytimeSearch.overlap(direct, direct), 1);
+        assert.strictEqual(AnytimeSearch.overlap(direct, transfer), 0);
+        assert.strictEqual(AnytimeSearch.overlap(direct, directSlower), 3 / 4);
+
+    });
+
+    it("should keep the k fastest diverse routes, ranked by travel time", function(){
+
+        const search = new AnytimeSearch(2, 0);
+
+        assert.ok(search.offer(hub));
+        assert.ok(search.offer(transfer));
+        assert.ok(search.offer(direct));
+        assert.ok(!search.offer(route(60, ["5", ["X", "Y"]])));
+
+        assert.deepStrictEqual(search.getRoutes(), [direct, transfer]);
+
+    });
+
+    it("should only keep the faster of two similar routes", function(){
+
+        const search = new AnytimeSearch(3, 0);
+
+        assert.ok(search.offer(directSlower));
+        assert.ok(search.offer(transfer));
+        assert.ok(search.offer(direct));
+        assert.ok(!search.offer(directSlower));
+
+        assert.deepStrictEqual(search.getRoutes(), [direct, transfer]);
+
+    });
+
+    it("should return the best routes found so far when the deadline passes", async function(){
+
+        const result = await new AnytimeSearch(3, 100).run([
+            [after(10, transfer)],
+            [after(30, hub), after(1000, direct), failAfter(20)]
+        ]);
+
+        assert.deepStrictEqual(result.routes, [transfer, hub]);
+        assert.ok(!result.complete);
+        assert.strictEqual(result.searchesFinished, 3);
+        assert.ok(result.elapsed < 500);
+
+    });
+
+    it("should cancel the searches still running when the deadline passes", async function(){
+
+        const tokens : CancellationToken[] = [];
+        const remember = (found: Route, delay: number) : RouteSearch => cancellation => {
+            tokens.push(cancellation);
+            return after(delay, found)(cancellation);
+        };
+
+        await new AnytimeSearch(3, 1000).run([[remember(transfer, 10)]]);
+        assert.ok(!tokens[0].isCancelled());
+
+        await new AnytimeSearch(3, 50).run([[remember(transfer, 10), remember(direct, 1000)]]);
+        assert.ok(tokens[1].isCancelled());
+        assert.strictEqual(tokens[1], tokens[2]);
+        assert.throws(() => tokens[2].throwIfCancelled(), /cancelled/);
+
+    });
+
+    it("should improve on the routes in later phases while there is time left", async function(){
+
+        let secondPhaseStarted = false;
+
+        const result = await new AnytimeSearch(3, 1000).run([
+            [after(10, hub), failAfter(5)],
+            [() => {
+                secondPhaseStarted = true;
+                return after(10, direct)();
+            }, after(20, directSlower), after(15, transfer)]
+        ]);
+
+        assert.ok(secondPhaseStarted);
+        assert.ok(result.complete);
+        assert.strictEqual(result.searchesFinished, 5);
+        assert.deepStrictEqual(result.routes, [direct, transfer, hub]);
+
+    });
+
+});
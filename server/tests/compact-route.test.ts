@@ -0,0 +1,225 @@
+import 'mocha';
+import assert from "assert";
+import express from 'express';
+import Route from "../src/path-finding/route";
+import {
+    acceptedCompactRouteVersion,
+    COMPACT_ROUTE_VERSION,
+    COMPACT_ROUTE_VERSION_WITHOUT_PATHS,
+    COMPACT_ROUTES_VERSION,
+    compactRouteMediaType,
+    encodeCompactRoute,
+    encodeCompactRoutes,
+    encodePolyline
+} from "../src/path-finding/compact-route";
+
+/**
+ * Creates a bus stop with the given code and description, and no location
+ */
+const busStop = (code: string, description: string) : any => ({
+    BusStopCode: code,
+    RoadName: "Clementi Ave 1",
+    Description: description,
+    Location: {type: "Point", coordinates: []}
+});
+
+/**
+ * Creates an HTTP Request with the given Accept header
+ */
+const requestAccepting = (accept: string) : express.Request => {
+    const request = Object.create(express.request);
+    request.headers = {accept: accept};
+    return request;
+};
+
+describe("Compact route encoding", function(){
+
+    it("should encode the service number, first and last stop and stop count of each segment", function(){
+
+        const route : Route = {
+            segments: [{
+                busService: {ServiceNo: "96"} as any,
+                busServiceOrigin: busStop("17009", "Clementi Int"),
+                busServiceDestination: busStop("17009", "Clementi Int"),
+                busStops: [busStop("17091", "Aft Clementi Ave 1"), busStop("17101", "Blk 352"), busStop("17171", "Sunset Way")]
+            }, {
+                busService: {ServiceNo: "2"} as any,
+                busServiceOrigin: busStop("99009", "Changi Village Ter"),
+                busServiceDestination: busStop("10009", "Bt Merah Int"),
+                busStops: [busStop("17171", "Sunset Way"), busStop("99009", "Changi Village Ter")]
+            }],
+            travelTime: 42
+        };
+
+        const expected = Buffer.concat([
+            Buffer.from([COMPACT_ROUTE_VERSION, 5]),
+            Buffer.from([2]), Buffer.from("96"),
+            Buffer.from([18]), Buffer.from("Aft Clementi Ave 1"),
+            Buffer.from([10]), Buffer.from("Sunset Way"),
+            Buffer.from([1]), Buffer.from("2"),
+            Buffer.from([18]), Buffer.from("Changi Village Ter"),
+            Buffer.from([2, 0, 1, 2, 3, 0, 3, 2, 4, 2, 0])
+        ]);
+
+        assert.ok(encodeCompactRoute(route).equals(expected));
+
+    });
+
+    it("should encode large numbers as varints", function(){
+
+        const stops : any[] = [];
+        for(let i = 0; i < 300; i++) stops.push(busStop(String(i), "Stop"));
+
+        const route : Route = {
+            segments: [{
+                busService: {ServiceNo: "2"} as any,
+                busServiceOrigin: stops[0],
+                busServiceDestination: stops[299],
+                busStops: stops
+            }],
+            travelTime: 0
+        };
+
+        const encoded = encodeCompactRoute(route);
+
+        // 300 = 0b10_0101100, written as 0xac 0x02, followed by the empty path
+        assert.deepStrictEqual([encoded[encoded.length - 3], encoded[encoded.length - 2]], [0xac, 0x02]);
+
+    });
+
+    it("should encode the bus stop locations of each segment as a polyline", function(){
+
+        const stops = [[-120.2, 38.5], [-120.95, 40.7], [-126.453, 43.252]].map((coordinates, i) => {
+            const stop = busStop(String(i), "Stop " + i);
+            stop.Location.coordinates = coordinates;
+            return stop;
+        });
+
+        const route : Route = {
+            segments: [{
+                busService: {ServiceNo: "2"} as any,
+                busServiceOrigin: stops[0],
+                busServiceDestination: stops[2],
+                busStops: stops
+            }],
+            travelTime: 0
+        };
+
+        const path = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+        const encoded = encodeCompactRoute(route);
+
+        // The path is the last string in the string table, at index 3
+        assert.strictEqual(encoded[encoded.length - 1], 4);
+        assert.ok(encoded.includes(Buffer.from(path)));
+
+    });
+
+    it("should encode alternative routes with a shared string table and their travel times", function(){
+
+        const routes : Route[] = [{
+            segments: [{
+                busService: {ServiceNo: "96"} as any,
+                busServiceOrigin: busStop("17009", "Clementi Int"),
+                busServiceDestination: busStop("17009", "Clementi Int"),
+                busStops: [busStop("17091", "A"), busStop("17171", "B")]
+            }],
+            travelTime: 30.4
+        }, {
+            segments: [{
+                busService: {ServiceNo: "2"} as any,
+                busServiceOrigin: busStop("99009", "Changi Village Ter"),
+                busServiceDestination: busStop("10009", "Bt Merah Int"),
+                busStops: [busStop("17171", "B"), busStop("17091", "A")]
+            }],
+            travelTime: 41
+        }];
+
+        const expected = Buffer.concat([
+            Buffer.from([COMPACT_ROUTES_VERSION, 4]),
+            Buffer.from([2]), Buffer.from("96"),
+            Buffer.from([1]), Buffer.from("A"),
+            Buffer.from([1]), Buffer.from("B"),
+            Buffer.from([1]), Buffer.from("2"),
+            Buffer.from([2, 30, 1, 0, 1, 2, 2, 0, 41, 1, 3, 2, 1, 2, 0])
+        ]);
+
+        assert.ok(encodeCompactRoutes(routes).equals(expected));
+
+    });
+
+    it("should leave out the paths in the first version", function(){
+
+        const stops = [[103.7654, 1.3129], [103.7656, 1.3131]].map((coordinates, i) => {
+            const stop = busStop(String(i), "Stop " + i);
+            stop.Location.coordinates = coordinates;
+            return stop;
+        });
+
+        const route : Route = {
+            segments: [{
+                busService: {ServiceNo: "96"} as any,
+                busServiceOrigin: stops[0],
+                busServiceDestination: stops[1],
+                busStops: stops
+            }],
+            travelTime: 0
+        };
+
+        const expected = Buffer.concat([
+            Buffer.from([COMPACT_ROUTE_VERSION_WITHOUT_PATHS, 3]),
+            Buffer.from([2]), Buffer.from("96"),
+            Buffer.from([6]), Buffer.from("Stop 0"),
+            Buffer.from([6]), Buffer.from("Stop 1"),
+            Buffer.from([1, 0, 1, 2, 2])
+        ]);
+
+        assert.ok(encodeCompactRoute(route, COMPACT_ROUTE_VERSION_WITHOUT_PATHS).equals(expected));
+
+    });
+
+    it("should respond with the highest version that the client lists", function(){
+
+        const versions = [COMPACT_ROUTE_VERSION_WITHOUT_PATHS, COMPACT_ROUTE_VERSION];
+
+        assert.strictEqual(compactRouteMediaType(COMPACT_ROUTE_VERSION_WITHOUT_PATHS),
+            "application/vnd.ezroute.compact-route");
+        assert.strictEqual(compactRouteMediaType(COMPACT_ROUTE_VERSION), "application/vnd.ezroute.compact-route;v=2");
+
+        // Clients that only know the bare media type can only decode the first version
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting(
+            "application/vnd.ezroute.compact-route, application/json;q=0.5"), versions),
+            COMPACT_ROUTE_VERSION_WITHOUT_PATHS);
+
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting(
+            "application/vnd.ezroute.compact-route;v=3, application/vnd.ezroute.compact-route;v=2, " +
+            "application/vnd.ezroute.compact-route, application/json;q=0.5"), versions), COMPACT_ROUTE_VERSION);
+
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting(
+            "application/vnd.ezroute.compact-route;v=3, application/json;q=0.5"), [COMPACT_ROUTES_VERSION]),
+            COMPACT_ROUTES_VERSION);
+
+        // Alternative routes are only encoded in a version that the first clients cannot decode
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting(
+            "application/vnd.ezroute.compact-route, application/json;q=0.5"), [COMPACT_ROUTES_VERSION]), 0);
+
+    });
+
+    it("should respond with JSON unless the client prefers the compact route encoding", function(){
+
+        const versions = [COMPACT_ROUTE_VERSION_WITHOUT_PATHS, COMPACT_ROUTE_VERSION];
+
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting("application/json"), versions), 0);
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting("*/*"), versions), 0);
+        assert.strictEqual(acceptedCompactRouteVersion(requestAccepting(
+            "application/json, application/vnd.ezroute.compact-route;v=2;q=0.5"), versions), 0);
+
+    });
+
+    it("should encode polylines in the Google Maps format", function(){
+
+        assert.strictEqual(encodePolyline([[-120.2, 38.5], [-120.95, 40.7], [-126.453, 43.252]]),
+            "_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+
+    });
+
+});
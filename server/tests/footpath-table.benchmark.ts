@@ -0,0 +1,55 @@
+import 'mocha';
+import assert from "assert";
+import FootpathTable from "../src/footpath/footpath-table";
+import {bruteForceFootpaths, syntheticStops} from "./synthetic-stops";
+
+/**
+ * The number of bus stops in the full LTA stop set
+ */
+const STOP_COUNT = 5100;
+
+/**
+ * The number of times to build the footpath table
+ */
+const RUNS = 5;
+
+describe("Footpath table benchmark", function(){
+
+    it("should build the footpath table of the full stop set faster than comparing every pair", function(){
+
+        const stops = syntheticStops(STOP_COUNT);
+
+        const gridTimes : number[] = [];
+        let table = FootpathTable.build(stops);
+
+        for(let run = 0; run < RUNS; run++) {
+            const start = process.hrtime();
+            table = FootpathTable.build(stops);
+            const [seconds, nanoseconds] = process.hrtime(start);
+            gridTimes.push(seconds * 1000 + nanoseconds / 1e6);
+        }
+
+        const bruteForceStart = process.hrtime();
+        const expected = bruteForceFootpaths(stops, FootpathTable.DEFAULT_RADIUS);
+        const [seconds, nanoseconds] = process.hrtime(bruteForceStart);
+        const bruteForceTime = seconds * 1000 + nanoseconds / 1e6;
+
+        let expectedCount = 0;
+        for(let code in expected) {
+            if(expected.hasOwnProperty(code)) expectedCount += expected[code].length;
+        }
+
+        const gridTime = gridTimes.sort((a, b) => a - b)[Math.floor(RUNS / 2)];
+        const encoded = table.encode();
+
+        console.log(`      ${stops.length} bus stops, ${table.footpathCount} footpaths within ${table.radius} m`);
+        console.log(`      grid join:   ${gridTime.toFixed(1)} ms (median of ${RUNS})`);
+        console.log(`      every pair:  ${bruteForceTime.toFixed(1)} ms`);
+        console.log(`      encoded:     ${encoded.length} bytes (${(encoded.length / stops.length).toFixed(1)} bytes per bus stop)`);
+
+        assert.strictEqual(table.footpathCount, expectedCount);
+        assert.ok(gridTime < bruteForceTime, `grid join took ${gridTime} ms`);
+
+    }).timeout(60000);
+
+});
@@ -0,0 +1,167 @@
+import 'mocha';
+import assert from "assert";
+import FootpathTable, {distanceBetween} from "../src/footpath/footpath-table";
+import storedFootpathTableModel from "../src/footpath/stored-footpath-table.model";
+import PointToPoint from "../src/path-finding/point-to-point";
+import BusRouteStops from "../src/bus-route-stops/bus-route-stops.interface";
+import {WALKING_SERVICE_NO} from "../src/path-finding/route-segment";
+import {bruteForceFootpaths, busStop, syntheticStops} from "./synthetic-stops";
+
+/**
+ * Creates the bus route of a bus service through the given bus stops
+ */
+const serviceRoute = (serviceNo: string, codes: string[]) : BusRouteStops => ({
+    Service: {ServiceNo: serviceNo, Direction: 1} as any,
+    ServiceOrigin: busStop(codes[0]),
+    ServiceDestination: busStop(codes[codes.length - 1]),
+    BusStops: codes.map(code => busStop(code))
+} as any);
+
+describe("Footpath table", function(){
+
+    it("should find the same footpaths as comparing every pair of bus stops", function(){
+
+        const stops = syntheticStops(1500);
+        const table = FootpathTable.build(stops, 400);
+        const expected = bruteForceFootpaths(stops, 400);
+
+        let footpathCount = 0;
+
+        stops.forEach(stop => {
+            const code = stop.BusStopCode as string;
+            const found = table.footpathsFrom(code).map(footpath => `${footpath.BusStopCode}:${footpath.distance}`);
+            assert.deepStrictEqual(found.sort(), expected[code].sort(), `footpaths from ${code}`);
+            footpathCount += found.length;
+        });
+
+        assert.strictEqual(table.footpathCount, footpathCount);
+        assert.ok(footpathCount > stops.length, `only ${footpathCount} footpaths`);
+
+    });
+
+    it("should estimate walking times in whole minutes", function(){
+
+        // 1 km at 80 m/min with a 30% detour is 16.25 minutes
+        assert.strictEqual(FootpathTable.walkingTime(1000), 17);
+        assert.strictEqual(FootpathTable.walkingTime(40), 1);
+        assert.strictEqual(FootpathTable.walkingTime(0), 1);
+
+        // One hundredth of a degree of latitude is about 1.11 km
+        assert.strictEqual(Math.round(distanceBetween([103.8, 1.3], [103.8, 1.31])), 1112);
+
+    });
+
+    it("should only have footpaths between bus stops with a location", function(){
+
+        const table = FootpathTable.build([
+            busStop("17091", [103.7654, 1.3129]),
+            busStop("17099", [103.7656, 1.3131]),
+            busStop("17101"),
+            busStop("17171", [103.7800, 1.3129])
+        ]);
+
+        assert.deepStrictEqual(table.footpathsFrom("17091").map(footpath => footpath.BusStopCode), ["17099"]);
+        assert.deepStrictEqual(table.footpathsFrom("17099").map(footpath => footpath.BusStopCode), ["17091"]);
+        assert.deepStrictEqual(table.footpathsFrom("17101"), []);
+        assert.deepStrictEqual(table.footpathsFrom("17171"), []);
+        assert.deepStrictEqual(table.footpathsFrom("99999"), []);
+        assert.strictEqual(table.stopCount, 4);
+
+    });
+
+    it("should decode the footpaths it encodes", function(){
+
+        const stops = syntheticStops(500, 7);
+        const table = FootpathTable.build(stops, 300);
+        const decoded = FootpathTable.decode(table.encode());
+
+        assert.strictEqual(decoded.radius, 300);
+        assert.strictEqual(decoded.stopCount, table.stopCount);
+        assert.strictEqual(decoded.footpathCount, table.footpathCount);
+        stops.forEach(stop =>
+            assert.deepStrictEqual(decoded.footpathsFrom(stop.BusStopCode), table.footpathsFrom(stop.BusStopCode)));
+
+        assert.throws(() => FootpathTable.decode(table.encode().slice(0, 100)), /truncated/);
+
+    });
+
+    it("should look for the footpath table again until one is stored", async function(){
+
+        const findOne = storedFootpathTableModel.findOne;
+        let stored : any = null;
+        let lookups = 0;
+
+        (storedFootpathTableModel as any).findOne = () => {
+            lookups += 1;
+            return Promise.resolve(stored);
+        };
+
+        try {
+            assert.strictEqual((await FootpathTable.load()).footpathCount, 0);
+
+            const table = FootpathTable.build([busStop("17091", [103.7654, 1.3129]), busStop("17099", [103.7656, 1.3131])]);
+            stored = {Data: table.encode()};
+            assert.strictEqual((await FootpathTable.load()).footpathCount, 2);
+            assert.strictEqual((await FootpathTable.load()).footpathCount, 2);
+            assert.strictEqual(lookups, 2);
+        } finally {
+            storedFootpathTableModel.findOne = findOne;
+            (FootpathTable as any).loaded = null;
+        }
+
+    });
+
+});
+
+describe("Point-to-point walking transfers", function(){
+
+    it("should walk to a bus stop across the road to transfer", function(){
+
+        const serviceRoutes = [
+            serviceRoute("96", ["17091", "17101", "17171", "17179"]),
+            serviceRoute("2", ["17161", "17009", "51071"])
+        ];
+
+        const segments = PointToPoint.segmentsAlongPath(["17091", "17101", "17171", "17161", "17009", "51071"],
+            serviceRoutes, {"17171_17161": 2});
+
+        assert.deepStrictEqual(segments.map(segment => segment.busService.ServiceNo), ["96", WALKING_SERVICE_NO, "2"]);
+        assert.deepStrictEqual(segments.map(segment => !!segment.walking), [false, true, false]);
+        assert.deepStrictEqual(segments[0].busStops.map(stop => stop.BusStopCode), ["17091", "17101", "17171"]);
+        assert.deepStrictEqual(segments[1].busStops.map(stop => stop.BusStopCode), ["17171", "17161"]);
+        assert.strictEqual(segments[1].busServiceOrigin.BusStopCode, "17171");
+        assert.strictEqual(segments[1].busServiceDestination.BusStopCode, "17161");
+        assert.deepStrictEqual(segments[2].busStops.map(stop => stop.BusStopCode), ["17161", "17009", "51071"]);
+
+    });
+
+    it("should walk at the start and end of a route", function(){
+
+        const serviceRoutes = [
+            serviceRoute("10", ["17099", "17009"]),
+            serviceRoute("96", ["17091", "17101", "17171"]),
+            serviceRoute("2", ["51071", "17179"])
+        ];
+
+        const segments = PointToPoint.segmentsAlongPath(["17099", "17091", "17101", "17171", "17179"],
+            serviceRoutes, {"17099_17091": 1, "17171_17179": 1});
+
+        assert.deepStrictEqual(segments.map(segment => segment.busService.ServiceNo),
+            [WALKING_SERVICE_NO, "96", WALKING_SERVICE_NO]);
+        assert.deepStrictEqual(segments[1].busStops.map(stop => stop.BusStopCode), ["17091", "17101", "17171"]);
+
+    });
+
+    it("should still transfer between bus services at a shared bus stop", function(){
+
+        const segments = PointToPoint.segmentsAlongPath(["17091", "17101", "17171", "51071"], [
+            serviceRoute("96", ["17091", "17101", "17171"]),
+            serviceRoute("2", ["17171", "51071"])
+        ], {});
+
+        assert.deepStrictEqual(segments.map(segment => segment.busService.ServiceNo), ["96", "2"]);
+        assert.ok(segments.every(segment => !segment.walking));
+
+    });
+
+});
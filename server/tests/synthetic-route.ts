@@ -0,0 +1,29 @@
+import Route from "../src/path-finding/route";
+import {RouteSearch} from "../src/path-finding/anytime-search";
+
+/**
+ * Creates a route that takes each bus service through the given bus stops
+ * @param travelTime The travel time of the route, in minutes
+ * @param legs The bus service number and the bus stop codes of each segment
+ */
+export const route = (travelTime: number, ...legs: [string, string[]][]) : Route => ({
+    segments: legs.map(([serviceNo, codes]) => ({
+        busService: {ServiceNo: serviceNo, Direction: 1} as any,
+        busServiceOrigin: {BusStopCode: codes[0]} as any,
+        busServiceDestination: {BusStopCode: codes[codes.length - 1]} as any,
+        busStops: codes.map(code => ({BusStopCode: code, Description: code}) as any)
+    })),
+    travelTime: travelTime
+});
+
+/**
+ * Creates a search that finds the route after a delay
+ */
+export const after = (delay: number, found: Route) : RouteSearch => () =>
+    new Promise<Route>(resolve => setTimeout(() => resolve(found), delay));
+
+/**
+ * Creates a search that fails after a delay
+ */
+export const failAfter = (delay: number) : RouteSearch => () =>
+    new Promise<Route>((_resolve, reject) => setTimeout(() => reject(new Error("No such route")), delay));
@@ -0,0 +1,79 @@
+import BusStop from "../src/bus-stop/bus-stop.interface";
+import {distanceBetween} from "../src/footpath/footpath-table";
+
+/**
+ * Creates a bus stop with the given code and location
+ * @param code The unique code of the bus stop
+ * @param coordinates The location of the bus stop, as [longitude, latitude], or none
+ */
+export const busStop = (code: string, coordinates: number[] = []) : BusStop => ({
+    BusStopCode: code,
+    RoadName: "Clementi Ave 1",
+    Description: `Stop ${code}`,
+    Location: {type: "Point", coordinates: coordinates as any}
+});
+
+/**
+ * Creates a set of bus stops laid out like those of Singapore, so that it is the same on every run
+ *
+ * The bus stops are spread around a number of town centres within the island's bounding box, and most of them have a
+ * partner across the road, some 20 to 60 meters away.
+ *
+ * @param count The number of bus stops
+ * @param seed The seed of the pseudo-random number generator
+ */
+export const syntheticStops = (count: number, seed: number = 42) : BusStop[] => {
+
+    const next = () => {
+        seed = (seed * 1103515245 + 12345) % 2147483648;
+        return seed / 2147483648;
+    };
+
+    /* About 111 km per degree, so 1e-5 degrees is about a meter */
+    const towns : number[][] = [];
+    for(let i = 0; i < 40; i++) towns.push([103.62 + next() * 0.38, 1.25 + next() * 0.2]);
+
+    const stops : BusStop[] = [];
+
+    while(stops.length < count) {
+
+        const town = towns[Math.floor(next() * towns.length)];
+        /* A roughly normal spread of about 1.5 km around the town centre */
+        const spread = () => (next() + next() + next() - 1.5) * 0.027;
+        const coordinates = [town[0] + spread(), town[1] + spread()];
+
+        stops.push(busStop(String(10000 + stops.length), coordinates));
+
+        if(stops.length < count && next() < 0.7) {
+            const across = (20 + next() * 40) * 1e-5;
+            const angle = next() * 2 * Math.PI;
+            stops.push(busStop(String(10000 + stops.length),
+                [coordinates[0] + across * Math.cos(angle), coordinates[1] + across * Math.sin(angle)]));
+        }
+
+    }
+
+    return stops;
+};
+
+/**
+ * Finds the footpaths between bus stops by comparing every pair of bus stops
+ * @param stops The bus stops
+ * @param radius The walking radius, in meters
+ * @returns The footpaths from each bus stop, by its code, each as the code of the bus stop walked to and the distance
+ * in whole meters, e.g. "10001:35"
+ */
+export const bruteForceFootpaths = (stops: BusStop[], radius: number) : {[key: string]: string[]} => {
+
+    const footpaths : {[key: string]: string[]} = {};
+
+    stops.forEach(a => footpaths[a.BusStopCode as string] = []);
+
+    stops.forEach(a => stops.forEach(b => {
+        if(a === b || a.Location.coordinates.length < 2 || b.Location.coordinates.length < 2) return;
+        const distance = distanceBetween(a.Location.coordinates, b.Location.coordinates);
+        if(distance <= radius) footpaths[a.BusStopCode as string].push(`${b.BusStopCode}:${Math.round(distance)}`);
+    }));
+
+    return footpaths;
+};
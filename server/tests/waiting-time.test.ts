@@ -0,0 +1,95 @@
+import 'mocha';
+import assert from "assert";
+import Route from "../src/path-finding/route";
+import BusArrival from "../src/bus-arrival/bus-arrival.interface";
+import {WALKING_SERVICE_NO} from "../src/path-finding/route-segment";
+import {addWaitingTime, walkingTimeToFirstBus, WORST_CASE_WAITING_TIME} from "../src/path-finding/waiting-time";
+import {route} from "./synthetic-route";
+
+const now = new Date(2019, 11, 4, 13, 0);
+
+/**
+ * Creates the arrival times of bus services at a bus stop, in minutes from now
+ */
+const arrivals = (code: string, minutesByService: {[key: string]: number}) : {[key: string]: BusArrival} => {
+    const arrivalTimes : {[key: string]: BusArrival} = {};
+
+    Object.keys(minutesByService).forEach(serviceNo => {
+        arrivalTimes[serviceNo] = {
+            ServiceNo: serviceNo,
+            BusStopCode: code,
+            EstimatedArrival: new Date(now.getTime() + minutesByService[serviceNo] * 60 * 1000)
+        };
+    });
+
+    return arrivalTimes;
+};
+
+/**
+ * Creates a route that walks from 17091 to 17099 for the given time, then takes bus 96 to 17171
+ */
+const walkThenBus = (walkingTime: number) : Route => {
+    const walked = route(20, [WALKING_SERVICE_NO, ["17091", "17099"]], ["96", ["17099", "17171"]]);
+    walked.segments[0].walking = true;
+    walked.segments[0].walkingTime = walkingTime;
+    return walked;
+};
+
+describe("Waiting time", function(){
+
+    it("should add the time until the first bus arrives", function(){
+
+        const bus = route(20, ["96", ["17091", "17171"]]);
+
+        addWaitingTime(bus, {"17091": arrivals("17091", {"96": 7})}, now);
+
+        assert.strictEqual(bus.travelTime, 27);
+
+    });
+
+    it("should assume the worst case when the arrival time is not known", function(){
+
+        const bus = route(20, ["96", ["17091", "17171"]]);
+
+        addWaitingTime(bus, {"17091": arrivals("17091", {"185": 2})}, now);
+
+        assert.strictEqual(bus.travelTime, 20 + WORST_CASE_WAITING_TIME);
+
+    });
+
+    it("should wait for the bus at the bus stop walked to", function(){
+
+        const walked = walkThenBus(4);
+
+        addWaitingTime(walked, {
+            "17091": arrivals("17091", {"96": 1}),
+            "17099": arrivals("17099", {"96": 7})
+        }, now);
+
+        assert.strictEqual(walkingTimeToFirstBus(walked), 4);
+        assert.strictEqual(walked.travelTime, 23);
+
+    });
+
+    it("should assume the worst case when the bus leaves before the walk ends", function(){
+
+        const walked = walkThenBus(4);
+
+        addWaitingTime(walked, {"17099": arrivals("17099", {"96": 3})}, now);
+
+        assert.strictEqual(walked.travelTime, 20 + WORST_CASE_WAITING_TIME);
+
+    });
+
+    it("should not add a waiting time to a route that is only walked", function(){
+
+        const walked = walkThenBus(4);
+        walked.segments.pop();
+
+        addWaitingTime(walked, {}, now);
+
+        assert.strictEqual(walked.travelTime, 20);
+
+    });
+
+});